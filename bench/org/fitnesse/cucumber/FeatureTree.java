@@ -0,0 +1,67 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+
+import util.FileUtil;
+
+/**
+ * Synthetic feature files for benchmarks. The steps match the {@code ExampleSteps} glue, so all scenarios pass.
+ */
+class FeatureTree {
+    private static final int FILES_PER_DIRECTORY = 10;
+
+    private FeatureTree() {
+    }
+
+    /**
+     * Write a tree of feature files to a new temporary directory, {@value #FILES_PER_DIRECTORY} files per directory.
+     */
+    public static File generate(int files, int scenarios, int exampleRows, int steps) throws IOException {
+        File root = File.createTempFile("features", "");
+        root.delete();
+        root.mkdir();
+        for (int i = 0; i < files; i++) {
+            File directory = new File(root, "group" + (i / FILES_PER_DIRECTORY));
+            directory.mkdir();
+            FileUtil.createFile(new File(directory, "feature" + i + ".feature"), feature(i, scenarios, exampleRows, steps));
+        }
+        return root;
+    }
+
+    public static void delete(File root) throws IOException {
+        FileUtil.deleteFileSystemDirectory(root);
+    }
+
+    /**
+     * A feature with a number of scenarios of the given amount of steps, followed by a scenario outline
+     * (if there are example rows).
+     */
+    public static String feature(int number, int scenarios, int exampleRows, int steps) {
+        StringBuilder feature = new StringBuilder();
+        feature.append("Feature: Generated feature ").append(number).append("\n")
+                .append("  Generated for benchmarking.\n\n");
+        for (int i = 0; i < scenarios; i++) {
+            feature.append("  Scenario: Generated scenario ").append(i).append("\n")
+                    .append("    Given a variable x with value ").append(i).append("\n");
+            for (int step = 2; step < steps; step++) {
+                feature.append("    When I multiply x by 1\n");
+            }
+            feature.append("    Then x should equal ").append(i).append("\n\n");
+        }
+        if (exampleRows > 0) {
+            feature.append("  Scenario Outline: Generated outline\n")
+                    .append("    Given a variable x with value <value>\n");
+            for (int step = 2; step < steps; step++) {
+                feature.append("    When I multiply x by 1\n");
+            }
+            feature.append("    Then x should equal <value>\n\n")
+                    .append("    Examples:\n")
+                    .append("      | value |\n");
+            for (int i = 0; i < exampleRows; i++) {
+                feature.append("      | ").append(i).append(" |\n");
+            }
+        }
+        return feature.toString();
+    }
+}
@@ -0,0 +1,145 @@
+package org.fitnesse.cucumber;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fitnesse.testsystems.TestSummary;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.model.*;
+
+/**
+ * Parsing a feature and rendering it, as a wiki page and as a test result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FormatterBenchmark {
+
+    @Param({"10"})
+    public int scenarios;
+
+    @Param({"10"})
+    public int exampleRows;
+
+    @Param({"5"})
+    public int steps;
+
+    private String content;
+    private ParsedFeature parsedFeature;
+
+    @Setup
+    public void setUp() {
+        content = FeatureTree.feature(0, scenarios, exampleRows, steps);
+        parsedFeature = ParsedFeature.parse(content);
+    }
+
+    @Benchmark
+    public ParsedFeature parse() {
+        return ParsedFeature.parse(content);
+    }
+
+    @Benchmark
+    public void pageFormatter(Blackhole blackhole) {
+        parsedFeature.replay(new FitNessePageFormatter(printer(blackhole)));
+    }
+
+    @Benchmark
+    public TestSummary resultFormatter(Blackhole blackhole) {
+        TestSummary testSummary = new TestSummary();
+        parsedFeature.replay(new PassingSteps(new FitNesseResultFormatter(testSummary, printer(blackhole), printer(blackhole))));
+        return testSummary;
+    }
+
+    private static Printer printer(final Blackhole blackhole) {
+        return new Printer() {
+            @Override
+            public void write(String text) {
+                blackhole.consume(text);
+            }
+        };
+    }
+
+    /**
+     * Reports every step as passed, right after it has been formatted.
+     */
+    private static class PassingSteps implements Formatter {
+        private static final Result PASSED = new Result(Result.PASSED, 1000L, null);
+
+        private final FitNesseResultFormatter formatter;
+
+        PassingSteps(FitNesseResultFormatter formatter) {
+            this.formatter = formatter;
+        }
+
+        @Override
+        public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+            formatter.syntaxError(state, event, legalEvents, uri, line);
+        }
+
+        @Override
+        public void uri(String uri) {
+            formatter.uri(uri);
+        }
+
+        @Override
+        public void feature(Feature feature) {
+            formatter.feature(feature);
+        }
+
+        @Override
+        public void scenarioOutline(ScenarioOutline scenarioOutline) {
+            formatter.scenarioOutline(scenarioOutline);
+        }
+
+        @Override
+        public void examples(Examples examples) {
+            formatter.examples(examples);
+        }
+
+        @Override
+        public void startOfScenarioLifeCycle(Scenario scenario) {
+            formatter.startOfScenarioLifeCycle(scenario);
+        }
+
+        @Override
+        public void background(Background background) {
+            formatter.background(background);
+        }
+
+        @Override
+        public void scenario(Scenario scenario) {
+            formatter.scenario(scenario);
+        }
+
+        @Override
+        public void step(Step step) {
+            formatter.step(step);
+            formatter.result(PASSED);
+        }
+
+        @Override
+        public void endOfScenarioLifeCycle(Scenario scenario) {
+            formatter.endOfScenarioLifeCycle(scenario);
+        }
+
+        @Override
+        public void done() {
+            formatter.done();
+        }
+
+        @Override
+        public void close() {
+            formatter.close();
+        }
+
+        @Override
+        public void eof() {
+            formatter.eof();
+        }
+    }
+}
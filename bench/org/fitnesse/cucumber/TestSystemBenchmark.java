@@ -0,0 +1,159 @@
+package org.fitnesse.cucumber;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fitnesse.testsystems.*;
+
+/**
+ * Running a feature page against the {@code ExampleSteps} glue, with a test system that stays up
+ * for the whole benchmark (as for a suite run).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TestSystemBenchmark {
+
+    @Param({"10"})
+    public int scenarios;
+
+    @Param({"10"})
+    public int exampleRows;
+
+    @Param({"5"})
+    public int steps;
+
+    @Param({"1", "4"})
+    public String scenarioThreads;
+
+    private CucumberTestSystem testSystem;
+    private TestPage testPage;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        testPage = new FeatureTestPage(FeatureTree.feature(0, scenarios, exampleRows, steps), scenarioThreads);
+        // The test system closes its class loader when it stops
+        ClassLoader classLoader = new URLClassLoader(new URL[0], Thread.currentThread().getContextClassLoader());
+        testSystem = new CucumberTestSystem("benchmark", new NullExecutionLogListener(), classLoader);
+        testSystem.addTestSystemListener(new BlackholeTestSystemListener());
+        testSystem.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        testSystem.bye();
+    }
+
+    @Benchmark
+    public void runTests() {
+        testSystem.runTests(testPage);
+    }
+
+    private static class FeatureTestPage implements TestPage {
+        private final String content;
+        private final String scenarioThreads;
+
+        FeatureTestPage(String content, String scenarioThreads) {
+            this.content = content;
+            this.scenarioThreads = scenarioThreads;
+        }
+
+        @Override
+        public String getName() {
+            return "GeneratedFeature";
+        }
+
+        @Override
+        public String getFullPath() {
+            return "FeatureFiles.GeneratedFeature";
+        }
+
+        @Override
+        public String getVariable(String name) {
+            if ("cucumber.glue".equals(name)) {
+                return "org.fitnesse.cucumber";
+            } else if (CucumberTestSystem.PARALLEL_SCENARIOS.equals(name)) {
+                return scenarioThreads;
+            }
+            return null;
+        }
+
+        @Override
+        public ClassPath getClassPath() {
+            return null;
+        }
+
+        @Override
+        public String getContent() {
+            return content;
+        }
+
+        @Override
+        public String getHtml() {
+            return content;
+        }
+    }
+
+    private class BlackholeTestSystemListener implements TestSystemListener {
+        @Override
+        public void testSystemStarted(TestSystem testSystem) {
+        }
+
+        @Override
+        public void testOutputChunk(String output) {
+            blackhole.consume(output);
+        }
+
+        @Override
+        public void testStarted(TestPage testPage) {
+        }
+
+        @Override
+        public void testComplete(TestPage testPage, TestSummary testSummary) {
+            blackhole.consume(testSummary);
+        }
+
+        @Override
+        public void testSystemStopped(TestSystem testSystem, Throwable cause) {
+        }
+
+        @Override
+        public void testAssertionVerified(Assertion assertion, TestResult testResult) {
+        }
+
+        @Override
+        public void testExceptionOccurred(Assertion assertion, ExceptionResult exceptionResult) {
+        }
+    }
+
+    private static class NullExecutionLogListener implements ExecutionLogListener {
+        @Override
+        public void commandStarted(ExecutionContext context) {
+        }
+
+        @Override
+        public void stdOut(String output) {
+        }
+
+        @Override
+        public void stdErr(String output) {
+        }
+
+        @Override
+        public void exitCode(int exitCode) {
+        }
+
+        @Override
+        public void exceptionOccurred(Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
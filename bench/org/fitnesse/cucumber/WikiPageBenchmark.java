@@ -0,0 +1,96 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fitnesse.wiki.SystemVariableSource;
+import fitnesse.wiki.WikiPage;
+
+/**
+ * Crawling a tree of feature files and rendering the feature pages.
+ * <p>
+ * Rendered pages are cached; run with {@code -jvmArgs -Dcucumber.html.cache=0} to measure rendering every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WikiPageBenchmark {
+
+    @Param({"100"})
+    public int files;
+
+    @Param({"10"})
+    public int scenarios;
+
+    @Param({"10"})
+    public int exampleRows;
+
+    @Param({"5"})
+    public int steps;
+
+    private File root;
+    private CucumberTocPage tocPage;
+    private List<WikiPage> featurePages;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = FeatureTree.generate(files, scenarios, exampleRows, steps);
+        tocPage = newTocPage();
+        featurePages = new ArrayList<>();
+        crawl(tocPage, featurePages);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FeatureTree.delete(root);
+    }
+
+    /**
+     * Crawl a tree that has not been seen before, as on the first request after start-up.
+     */
+    @Benchmark
+    public List<WikiPage> crawlNewTree() {
+        List<WikiPage> pages = new ArrayList<>();
+        crawl(newTocPage(), pages);
+        return pages;
+    }
+
+    /**
+     * Crawl the same tree again, as for every suite run.
+     */
+    @Benchmark
+    public List<WikiPage> crawlKnownTree() {
+        List<WikiPage> pages = new ArrayList<>();
+        crawl(tocPage, pages);
+        return pages;
+    }
+
+    @Benchmark
+    public void getHtml(Blackhole blackhole) {
+        for (WikiPage page : featurePages) {
+            blackhole.consume(page.getHtml());
+        }
+    }
+
+    private CucumberTocPage newTocPage() {
+        return new CucumberTocPage(root, "FeatureFiles", null, new SystemVariableSource());
+    }
+
+    private static void crawl(WikiPage page, List<WikiPage> featurePages) {
+        for (WikiPage child : page.getChildren()) {
+            if (child instanceof CucumberFeaturePage) {
+                featurePages.add(child);
+            } else {
+                crawl(child, featurePages);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.fitnesse.cucumber;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers small fragments of output into larger chunks.
+ * <p>
+ * The buffer is passed on once it holds {@code bufferSize} characters, when output has been waiting for
+ * {@code flushInterval} milliseconds since the last flush (also while a slow step is still running), or when
+ * {@link #flush()} is called (e.g. at the end of a scenario).
+ */
+class BufferedPrinter implements Printer {
+    private static final ScheduledExecutorService FLUSHER =
+            Executors.newSingleThreadScheduledExecutor(new CucumberThreadFactory("cucumber-output", null));
+
+    private final Printer printer;
+    private final int bufferSize;
+    private final long flushIntervalNanos;
+    private final StringBuilder buffer;
+    private long lastFlush = System.nanoTime();
+    private ScheduledFuture<?> scheduledFlush;
+
+    public BufferedPrinter(Printer printer, int bufferSize, long flushInterval) {
+        this.printer = printer;
+        this.bufferSize = bufferSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.buffer = new StringBuilder(Math.max(bufferSize, 16));
+    }
+
+    @Override
+    public void write(String text) {
+        append(text);
+    }
+
+    /**
+     * Like {@link #write(String)}, without turning the text into a string first.
+     */
+    public synchronized void append(CharSequence text) {
+        buffer.append(text);
+        long waited = System.nanoTime() - lastFlush;
+        if (buffer.length() >= bufferSize || waited >= flushIntervalNanos) {
+            flush();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = FLUSHER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, flushIntervalNanos - waited, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (buffer.length() > 0) {
+            printer.write(buffer.toString());
+            buffer.setLength(0);
+        }
+        lastFlush = System.nanoTime();
+    }
+}
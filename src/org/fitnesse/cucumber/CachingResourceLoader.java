@@ -0,0 +1,39 @@
+package org.fitnesse.cucumber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import cucumber.runtime.io.Resource;
+import cucumber.runtime.io.ResourceLoader;
+
+/**
+ * Remembers which resources were found for a path, so the class path is scanned only once,
+ * no matter how many runtimes (and backends) look up their glue classes.
+ */
+class CachingResourceLoader implements ResourceLoader {
+    private final ResourceLoader resourceLoader;
+    private final ConcurrentMap<String, List<Resource>> resources = new ConcurrentHashMap<>();
+
+    public CachingResourceLoader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    @Override
+    public Iterable<Resource> resources(String path, String suffix) {
+        String key = path + "|" + suffix;
+        List<Resource> found = resources.get(key);
+        if (found == null) {
+            found = new ArrayList<>();
+            for (Resource resource : resourceLoader.resources(path, suffix)) {
+                found.add(resource);
+            }
+            List<Resource> other = resources.putIfAbsent(key, found);
+            if (other != null) {
+                found = other;
+            }
+        }
+        return found;
+    }
+}
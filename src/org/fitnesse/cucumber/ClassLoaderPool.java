@@ -0,0 +1,171 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import static java.lang.String.format;
+
+/**
+ * Class loaders for test systems, kept after a test system is done, so the next test system with the
+ * same class path starts with classes (and glue) already loaded.
+ * <p>
+ * A loader is reused only if none of the class path elements changed since it was created: for jar files
+ * the modification time and size are compared, for directories the modification times of all their files.
+ * Loaders that have been idle for longer than their time-to-live are closed.
+ */
+class ClassLoaderPool {
+    private final ClassLoader parent;
+    private final Map<String, Deque<PooledClassLoader>> idleClassLoaders = new HashMap<>();
+    private Timer evictionTimer;
+
+    public ClassLoaderPool(ClassLoader parent) {
+        this.parent = parent;
+    }
+
+    public synchronized URLClassLoader acquire(List<String> classPath, long timeToLive) {
+        String classPathKey = classPath.toString();
+        String stamp = stamp(classPath);
+        Deque<PooledClassLoader> idle = idleClassLoaders.get(classPathKey);
+        if (idle != null) {
+            while (!idle.isEmpty()) {
+                PooledClassLoader classLoader = idle.pop();
+                if (stamp.equals(classLoader.stamp)) {
+                    return classLoader;
+                }
+                classLoader.dispose();
+            }
+        }
+        return new PooledClassLoader(urls(classPath), classPathKey, stamp, timeToLive);
+    }
+
+    private synchronized void release(final PooledClassLoader classLoader) {
+        Deque<PooledClassLoader> idle = idleClassLoaders.get(classLoader.classPathKey);
+        if (idle == null) {
+            idle = new ArrayDeque<>();
+            idleClassLoaders.put(classLoader.classPathKey, idle);
+        }
+        if (idle.contains(classLoader)) {
+            return;
+        }
+        classLoader.idleSince = System.currentTimeMillis();
+        idle.push(classLoader);
+        if (evictionTimer == null) {
+            evictionTimer = new Timer("cucumber-classloader-eviction", true);
+        }
+        evictionTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                evictExpired();
+            }
+        }, classLoader.timeToLive);
+    }
+
+    synchronized void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Deque<PooledClassLoader>> idle = idleClassLoaders.values().iterator(); idle.hasNext(); ) {
+            Deque<PooledClassLoader> classLoaders = idle.next();
+            for (Iterator<PooledClassLoader> i = classLoaders.iterator(); i.hasNext(); ) {
+                PooledClassLoader classLoader = i.next();
+                if (now - classLoader.idleSince >= classLoader.timeToLive) {
+                    i.remove();
+                    classLoader.dispose();
+                }
+            }
+            if (classLoaders.isEmpty()) {
+                idle.remove();
+            }
+        }
+    }
+
+    synchronized int idleCount() {
+        int count = 0;
+        for (Deque<PooledClassLoader> classLoaders : idleClassLoaders.values()) {
+            count += classLoaders.size();
+        }
+        return count;
+    }
+
+    /**
+     * Summary of the modification times (and for jars: sizes) of the class path elements, that changes when they do.
+     */
+    static String stamp(List<String> classPath) {
+        StringBuilder stamp = new StringBuilder();
+        for (String path : classPath) {
+            File file = new File(path);
+            stamp.append(file.isDirectory() ? directoryStamp(file) : file.lastModified() + "/" + file.length()).append(';');
+        }
+        return stamp.toString();
+    }
+
+    private static long directoryStamp(File dir) {
+        long stamp = dir.lastModified();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                stamp = 31 * stamp + (file.isDirectory() ? directoryStamp(file) : file.lastModified() ^ file.length());
+            }
+        }
+        return stamp;
+    }
+
+    private static URL[] urls(List<String> classPath) {
+        URL[] urls = new URL[classPath.size()];
+        int i = 0;
+        for (String path : classPath) {
+            try {
+                urls[i++] = new File(path).toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException(format("path '%s' can not be converted to a valid URL", path), e);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * A class loader from the pool. {@link #close()} hands it back to the pool, together with its runtime cache.
+     */
+    class PooledClassLoader extends URLClassLoader {
+        private final String classPathKey;
+        private final String stamp;
+        private final long timeToLive;
+        private final RuntimeCache runtimeCache;
+        private long idleSince;
+
+        PooledClassLoader(URL[] urls, String classPathKey, String stamp, long timeToLive) {
+            super(urls, parent);
+            this.classPathKey = classPathKey;
+            this.stamp = stamp;
+            this.timeToLive = timeToLive;
+            this.runtimeCache = new RuntimeCache(this);
+        }
+
+        public RuntimeCache getRuntimeCache() {
+            return runtimeCache;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+
+        private void dispose() {
+            runtimeCache.clear();
+            try {
+                super.close();
+            } catch (IOException e) {
+                // nothing to do about it
+            }
+        }
+    }
+}
@@ -9,15 +9,15 @@ import org.apache.commons.lang.NotImplementedException;
 import fitnesse.testrunner.WikiPageIdentity;
 import fitnesse.wiki.*;
 import gherkin.parser.ParseError;
-import util.FileUtil;
 
 import static java.util.Collections.emptyList;
 
 public class CucumberFeaturePage implements WikiPage {
+    public static final String EXAMPLE_ROWS = "cucumber.examples.rows";
+
     private final File path;
     private final String name;
     private final WikiPage parent;
-    private String content;
 
     public CucumberFeaturePage(File path, String name, WikiPage parent) {
         this.name = name;
@@ -94,30 +94,43 @@ public class CucumberFeaturePage implements WikiPage {
 
     @Override
     public String getHtml() {
+        long lastModified = path.lastModified();
+        long length = path.length();
+        int exampleRows = Math.max(0, CucumberTestSystem.intValue(getVariable(EXAMPLE_ROWS), FitNessePageFormatter.EXAMPLE_ROWS));
+        // The html depends on the number of example rows shown, so it is cached per number
+        File cacheKey = new File(path.getPath() + "#" + exampleRows);
+        String html = FileCache.html().get(cacheKey, lastModified, length);
+        if (html == null) {
+            html = renderHtml(exampleRows);
+            FileCache.html().put(cacheKey, lastModified, length, html);
+        }
+        return html;
+    }
+
+    private String renderHtml(int exampleRows) {
         final StringBuilder buffer = new StringBuilder();
         try {
-            new gherkin.parser.Parser(new FitNessePageFormatter(new Printer() {
+            FeatureCache.getInstance().get(path).replay(new FitNessePageFormatter(new Printer() {
                 @Override
                 public void write(final String text) {
                     buffer.append(text);
                 }
-            })).parse(readContent(), "", 0);
+            }, exampleRows));
         } catch (ParseError e) {
             buffer.append("<span class=\"error\">Parse error in Cucumber page: " + e.getMessage() + "</span><br/><br/>");
             buffer.append(readContent().replace("\n", "<br/>"));
+        } catch (IOException e) {
+            buffer.append(readContent());
         }
         return buffer.toString();
     }
 
     private String readContent() {
-        if (content == null) {
-            try {
-                content = FileUtil.getFileContent(path);
-            } catch (IOException e) {
-                content = String.format("<p class='error'>Unable to read feature file %s: %s</p>", path, e.getMessage());
-            }
+        try {
+            return FeatureFile.read(path);
+        } catch (IOException e) {
+            return String.format("<p class='error'>Unable to read feature file %s: %s</p>", path, e.getMessage());
         }
-        return content;
     }
 
     @Override
@@ -0,0 +1,163 @@
+package org.fitnesse.cucumber;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import gherkin.formatter.model.Result;
+
+/**
+ * Counters and latency histograms, updated by the test systems and result formatters and exposed over JMX.
+ */
+class CucumberMetrics implements CucumberMetricsMXBean {
+    static final String OBJECT_NAME = "org.fitnesse.cucumber:type=CucumberTestSystem";
+
+    private static final Logger LOG = Logger.getLogger(CucumberMetrics.class.getName());
+    private static final CucumberMetrics INSTANCE = new CucumberMetrics();
+
+    private final AtomicLong pagesRun = new AtomicLong();
+    // Test systems can run the same page at once, so pages are counted
+    private final Map<String, Integer> pagesInFlight = new HashMap<>();
+    private final LatencyHistogram pageDurations = new LatencyHistogram();
+    private final LatencyHistogram runtimeCreationDurations = new LatencyHistogram();
+    private final LatencyHistogram glueLoadDurations = new LatencyHistogram();
+    private final AtomicLong stepsFailed = new AtomicLong();
+    private final AtomicLong stepsUndefined = new AtomicLong();
+    private final LatencyHistogram stepDurations = new LatencyHistogram();
+
+    public static CucumberMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Make the metrics available in the platform MBean server. Registering more than once is harmless.
+     */
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            LOG.fine("Cucumber metrics are registered already");
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Unable to register Cucumber metrics", e);
+        }
+    }
+
+    public void pageStarted(String page) {
+        if (page != null) {
+            synchronized (pagesInFlight) {
+                Integer running = pagesInFlight.get(page);
+                pagesInFlight.put(page, running == null ? 1 : running + 1);
+            }
+        }
+    }
+
+    public void pageCompleted(String page, long nanos) {
+        if (page != null) {
+            synchronized (pagesInFlight) {
+                Integer running = pagesInFlight.get(page);
+                if (running == null || running <= 1) {
+                    pagesInFlight.remove(page);
+                } else {
+                    pagesInFlight.put(page, running - 1);
+                }
+            }
+        }
+        pagesRun.incrementAndGet();
+        pageDurations.record(nanos);
+    }
+
+    /**
+     * @param nanos     time to create the runtime, including loading the glue
+     * @param glueNanos time to load the glue
+     */
+    public void runtimeCreated(long nanos, long glueNanos) {
+        runtimeCreationDurations.record(nanos);
+        glueLoadDurations.record(glueNanos);
+    }
+
+    public void stepCompleted(String status, Long nanos) {
+        stepDurations.record(nanos != null ? nanos : 0);
+        if (Result.FAILED.equals(status)) {
+            stepsFailed.incrementAndGet();
+        } else if (Result.UNDEFINED.getStatus().equals(status)) {
+            stepsUndefined.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getPagesRun() {
+        return pagesRun.get();
+    }
+
+    @Override
+    public String[] getPagesInFlight() {
+        synchronized (pagesInFlight) {
+            return pagesInFlight.keySet().toArray(new String[0]);
+        }
+    }
+
+    @Override
+    public Latency getPageDurations() {
+        return pageDurations.summary();
+    }
+
+    @Override
+    public long getRuntimesCreated() {
+        return runtimeCreationDurations.getCount();
+    }
+
+    @Override
+    public Latency getRuntimeCreationDurations() {
+        return runtimeCreationDurations.summary();
+    }
+
+    @Override
+    public Latency getGlueLoadDurations() {
+        return glueLoadDurations.summary();
+    }
+
+    @Override
+    public long getStepsRun() {
+        return stepDurations.getCount();
+    }
+
+    @Override
+    public long getStepsFailed() {
+        return stepsFailed.get();
+    }
+
+    @Override
+    public long getStepsUndefined() {
+        return stepsUndefined.get();
+    }
+
+    @Override
+    public Latency getStepDurations() {
+        return stepDurations.summary();
+    }
+
+    @Override
+    public double getStepsPerSecond() {
+        long pageTime = pageDurations.getTotal();
+        return pageTime == 0 ? 0 : stepDurations.getCount() * 1000000000.0 / pageTime;
+    }
+
+    @Override
+    public void reset() {
+        pagesRun.set(0);
+        pageDurations.reset();
+        runtimeCreationDurations.reset();
+        glueLoadDurations.reset();
+        stepsFailed.set(0);
+        stepsUndefined.set(0);
+        stepDurations.reset();
+    }
+}
@@ -0,0 +1,89 @@
+package org.fitnesse.cucumber;
+
+/**
+ * Operational metrics of the Cucumber test systems in this FitNesse instance, registered in the platform
+ * MBean server as {@value CucumberMetrics#OBJECT_NAME}. Durations are in milliseconds.
+ */
+public interface CucumberMetricsMXBean {
+
+    long getPagesRun();
+
+    /**
+     * Full paths of the pages being executed right now.
+     */
+    String[] getPagesInFlight();
+
+    Latency getPageDurations();
+
+    /**
+     * Runtimes created, including loading the glue.
+     */
+    long getRuntimesCreated();
+
+    Latency getRuntimeCreationDurations();
+
+    /**
+     * Time spent loading the glue into the backends, part of creating a runtime.
+     */
+    Latency getGlueLoadDurations();
+
+    long getStepsRun();
+
+    long getStepsFailed();
+
+    long getStepsUndefined();
+
+    Latency getStepDurations();
+
+    /**
+     * Steps run per second of page execution time.
+     */
+    double getStepsPerSecond();
+
+    void reset();
+
+    /**
+     * Summary of a latency histogram. Percentiles are approximate (the upper bound of their bucket).
+     */
+    class Latency {
+        private final long count;
+        private final double mean;
+        private final double max;
+        private final double percentile50;
+        private final double percentile95;
+        private final double percentile99;
+
+        public Latency(long count, double mean, double max, double percentile50, double percentile95, double percentile99) {
+            this.count = count;
+            this.mean = mean;
+            this.max = max;
+            this.percentile50 = percentile50;
+            this.percentile95 = percentile95;
+            this.percentile99 = percentile99;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getPercentile50() {
+            return percentile50;
+        }
+
+        public double getPercentile95() {
+            return percentile95;
+        }
+
+        public double getPercentile99() {
+            return percentile99;
+        }
+    }
+}
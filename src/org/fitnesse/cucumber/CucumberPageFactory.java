@@ -11,7 +11,7 @@ public class CucumberPageFactory implements WikiPageFactory {
 
     @Override
     public WikiPage makePage(File path, String pageName, WikiPage parent, VariableSource variableSource) {
-        return new CucumberTocPage(path, pageName, parent, variableSource);
+        return CucumberTocPage.forDirectory(path, pageName, parent, variableSource);
     }
 
     @Override
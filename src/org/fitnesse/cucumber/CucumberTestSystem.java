@@ -1,19 +1,25 @@
 package org.fitnesse.cucumber;
 
 import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import cucumber.runtime.*;
 import cucumber.runtime.Runtime;
-import cucumber.runtime.io.MultiLoader;
-import cucumber.runtime.io.Resource;
-import cucumber.runtime.io.ResourceLoader;
-import cucumber.runtime.io.ResourceLoaderClassFinder;
 import cucumber.runtime.model.CucumberFeature;
 import fitnesse.testrunner.WikiTestPage;
 import fitnesse.testsystems.*;
 import fitnesse.wiki.WikiPage;
 import fitnesse.wiki.fs.FileSystemPage;
+import gherkin.parser.ParseError;
 import util.FileUtil;
 
 import static java.lang.String.format;
@@ -24,20 +30,72 @@ import static java.lang.String.format;
 public class CucumberTestSystem implements TestSystem {
 
     public static final String TEST_SYSTEM_NAME = "cucumber";
+    public static final String PARALLEL_SCENARIOS = "cucumber.parallel.scenarios";
+    public static final String PARALLEL_PAGES = "cucumber.parallel.pages";
+    public static final String OUTPUT_BUFFER_SIZE = "cucumber.output.buffer";
+    public static final String OUTPUT_FLUSH_INTERVAL = "cucumber.output.interval";
+    public static final String HISTORY = "cucumber.history";
+    public static final String RERUN = "cucumber.rerun";
+    public static final String INCREMENTAL = "cucumber.incremental";
+    public static final String SCENARIO_TIMEOUT = "cucumber.timeout.scenario";
+    public static final String PAGE_TIMEOUT = "cucumber.timeout.page";
+    public static final String SHARD_INDEX = "cucumber.shard.index";
+    public static final String SHARD_COUNT = "cucumber.shard.count";
+    public static final String SHARD_REPORT = "cucumber.shard.report";
+    public static final String SHARD_DURATIONS = "cucumber.shard.durations";
+    public static final String BATCH = "cucumber.batch";
+    public static final String EMBEDDINGS = "cucumber.embeddings";
+    public static final String EMBEDDINGS_URL = "cucumber.embeddings.url";
+    private static final String FEATURE_PATH = "fitnesse";
+    private static final int DEFAULT_OUTPUT_BUFFER_SIZE = 8192;
+    private static final int DEFAULT_OUTPUT_FLUSH_INTERVAL = 250;
     private final String name;
     private final ExecutionLogListener executionLogListener;
     private final ClassLoader classLoader;
+    private final int pageThreads;
     private final CompositeTestSystemListener testSystemListener;
+    private final OrderedTestSystemListener orderedTestSystemListener;
+    private final RuntimeCache runtimeCache;
+    private final String warmUpGluePath;
 
-    private boolean started = false;
-    private TestSummary testSummary;
+    private final Map<String, Runtime> suiteRuntimes = new HashMap<>();
+    private final Set<String> reportedSnippets = new HashSet<>();
+    private final Set<File> preloadedSuites = new HashSet<>();
+
+    private volatile String classPathStamp;
+    private ExecutorService preloader;
+    private volatile boolean started = false;
+    private ExecutorService pageExecutor;
+    private Future<?> warmUp;
 
     public CucumberTestSystem(String name, final ExecutionLogListener executionLogListener, ClassLoader classLoader) {
+        this(name, executionLogListener, classLoader, 1);
+    }
+
+    /**
+     * @param pageThreads number of pages that may run at the same time. With more than one thread,
+     *                    {@link #runTests(TestPage)} returns before the page is executed.
+     */
+    public CucumberTestSystem(String name, final ExecutionLogListener executionLogListener, ClassLoader classLoader, int pageThreads) {
+        this(name, executionLogListener, classLoader, pageThreads, null);
+    }
+
+    /**
+     * @param warmUpGluePath glue to load in the background as soon as the test system starts, so the first page
+     *                       does not have to wait for all of it. May be null.
+     */
+    public CucumberTestSystem(String name, final ExecutionLogListener executionLogListener, ClassLoader classLoader, int pageThreads, String warmUpGluePath) {
         super();
         this.name = name;
         this.executionLogListener = executionLogListener;
         this.classLoader = classLoader;
+        this.pageThreads = pageThreads;
+        this.warmUpGluePath = warmUpGluePath;
         this.testSystemListener = new CompositeTestSystemListener();
+        this.orderedTestSystemListener = new OrderedTestSystemListener(testSystemListener);
+        this.runtimeCache = classLoader instanceof ClassLoaderPool.PooledClassLoader
+                ? ((ClassLoaderPool.PooledClassLoader) classLoader).getRuntimeCache()
+                : new RuntimeCache(classLoader);
     }
 
     @Override
@@ -47,6 +105,12 @@ public class CucumberTestSystem implements TestSystem {
 
     @Override
     public void start() {
+        if (pageThreads > 1) {
+            pageExecutor = Executors.newFixedThreadPool(pageThreads, new CucumberThreadFactory("cucumber-page", classLoader));
+        }
+        if (warmUpGluePath != null && !warmUpGluePath.trim().isEmpty()) {
+            warmUp();
+        }
 
         started = true;
 
@@ -55,118 +119,571 @@ public class CucumberTestSystem implements TestSystem {
 
     @Override
     public void bye() {
+        if (pageExecutor != null) {
+            pageExecutor.shutdown();
+            try {
+                pageExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         kill();
     }
 
     @Override
     public void kill() {
+        if (pageExecutor != null) {
+            pageExecutor.shutdownNow();
+        }
+        if (warmUp != null) {
+            warmUp.cancel(true);
+        }
+        synchronized (suiteRuntimes) {
+            if (preloader != null) {
+                preloader.shutdownNow();
+            }
+            for (Map.Entry<String, Runtime> suiteRuntime : suiteRuntimes.entrySet()) {
+                runtimeCache.release(suiteRuntime.getKey(), suiteRuntime.getValue());
+            }
+            suiteRuntimes.clear();
+        }
         testSystemListener.testSystemStopped(this, null);
 
+        // A pooled class loader is handed back to the pool on close, its runtimes are kept for the next test system
+        if (!(classLoader instanceof ClassLoaderPool.PooledClassLoader)) {
+            runtimeCache.clear();
+        }
         if (classLoader instanceof Closeable) {
             FileUtil.close((Closeable) classLoader);
         }
     }
 
     @Override
-    public void runTests(TestPage testPage) {
-        final ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
-        String gluePath = testPage.getVariable("cucumber.glue");
-        final TestSummary testSummary = new TestSummary();
-
-        final FitNesseResultFormatter formatter = new FitNesseResultFormatter(testSummary,
-                new Printer() {
-                    @Override
-                    public void write(final String text) {
-                        testOutputChunk(text);
-                    }
-                }, new Printer() {
-                    @Override
-                    public void write(final String text) {
-                        executionLogListener.stdErr(text);
-                    }
-                });
+    public void runTests(final TestPage testPage) {
+        if (pageExecutor == null) {
+            runTests(testPage, testSystemListener);
+            return;
+        }
+        final TestSystemListener pageListener = orderedTestSystemListener.nextPage();
+        pageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runTests(testPage, pageListener);
+                } catch (RuntimeException e) {
+                    executionLogListener.exceptionOccurred(e);
+                }
+            }
+        });
+    }
 
-        testSystemListener.testStarted(testPage);
+    /**
+     * Scan the class path for the glue, load the step definition classes and compile their patterns on a thread of
+     * its own. The runtime that results is kept in the runtime cache for the first page.
+     */
+    private void warmUp() {
+        ExecutorService warmUpExecutor = Executors.newSingleThreadExecutor(new CucumberThreadFactory("cucumber-warmup", classLoader));
+        warmUp = warmUpExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                Runtime runtime = runtimeCache.acquire(warmUpGluePath);
+                runtimeCache.release(warmUpGluePath, runtime);
+            }
+        });
+        warmUpExecutor.shutdown();
+    }
 
+    private void awaitWarmUp() {
+        if (warmUp == null) {
+            return;
+        }
         try {
-            Thread.currentThread().setContextClassLoader(classLoader);
+            warmUp.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            // The page runs into the same problem when it loads the glue, and reports it
+        }
+    }
 
-            RuntimeOptions runtimeOptions = new RuntimeOptions(Arrays.asList("--glue", gluePath));
+    private void runTests(TestPage testPage, final TestSystemListener listener) {
+        awaitWarmUp();
+        final ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+        final TestSummary testSummary = new TestSummary();
 
-            final List<CucumberFeature> cucumberFeatures = new ArrayList<>();
-            final List<Object> filters = new ArrayList<>();
-            final FeatureBuilder builder = new FeatureBuilder(cucumberFeatures);
+        final Printer errorPrinter = new Printer() {
+            @Override
+            public void write(final String text) {
+                executionLogListener.stdErr(text);
+            }
+        };
+        final String shardReport = trim(variable(testPage, SHARD_REPORT));
+        final StringBuilder pageHtml = shardReport != null && !shardReport.isEmpty() ? new StringBuilder() : null;
+        final BufferedPrinter outputPrinter = new BufferedPrinter(new Printer() {
+            @Override
+            public void write(final String text) {
+                if (pageHtml != null) {
+                    pageHtml.append(text);
+                }
+                listener.testOutputChunk(text);
+            }
+        }, intVariable(testPage, OUTPUT_BUFFER_SIZE, DEFAULT_OUTPUT_BUFFER_SIZE),
+                intVariable(testPage, OUTPUT_FLUSH_INTERVAL, DEFAULT_OUTPUT_FLUSH_INTERVAL));
+        final FitNesseResultFormatter formatter = new FitNesseResultFormatter(testSummary, outputPrinter, errorPrinter);
+        formatter.setEmbeddings(embeddingStore(testPage));
+
+        listener.testStarted(testPage);
+        String pageName = testPage.getFullPath();
+        long start = System.nanoTime();
+        CucumberMetrics.getInstance().pageStarted(pageName);
+        String featurePath = null;
+        String shardKey = null;
+        int shard = 1;
 
-            builder.parse(new PageResource(testPage), filters);
-            ResourceLoader resourceLoader = new MultiLoader(classLoader);
-            ClassFinder classFinder = new ResourceLoaderClassFinder(resourceLoader, classLoader);
-            Runtime runtime = new Runtime(resourceLoader, classFinder, classLoader, runtimeOptions);
+        try {
+            Thread.currentThread().setContextClassLoader(classLoader);
 
-            for (CucumberFeature cucumberFeature : cucumberFeatures) {
-                cucumberFeature.run(formatter, formatter, runtime);
+            if (isBatch(testPage)) {
+                preloadSuite(testPage);
+            }
+            featurePath = featurePath(testPage);
+            shardKey = shardKey(testPage);
+            final ScenarioHistory history = featurePath != null ? scenarioHistory(testPage) : null;
+            int shardCount = intValue(variable(testPage, SHARD_COUNT), 1);
+            if (shardCount > 1 && featurePath != null) {
+                shard = intValue(variable(testPage, SHARD_INDEX), 1);
+                int plannedShard = shardPlan(testPage, shardCount, errorPrinter).shardOf(shardKey) + 1;
+                if (plannedShard != shard) {
+                    outputPrinter.write(format("<span class='ignore'>Runs in shard %d of %d</span>", plannedShard, shardCount));
+                    featurePath = null;
+                    return;
+                }
+            }
+            final String incremental = history != null ? testPage.getVariable(INCREMENTAL) : null;
+            final String fingerprint = "true".equalsIgnoreCase(trim(incremental)) ? fingerprint(testPage) : null;
+            final Map<Integer, ScenarioHistory.Outcome> greenRun = fingerprint != null
+                    ? greenRun(history, featurePath, fingerprint, errorPrinter) : null;
+
+            if (greenRun != null) {
+                formatter.previous(greenRun.values());
+            } else {
+                runFeatures(testPage, featurePath, history, formatter, testSummary, errorPrinter);
+                if (fingerprint != null) {
+                    boolean green = testSummary.getWrong() == 0 && testSummary.getExceptions() == 0;
+                    recordGreenRun(history, featurePath, green ? fingerprint : null, errorPrinter);
+                } else if ("clear".equalsIgnoreCase(trim(incremental))) {
+                    recordGreenRun(history, featurePath, null, errorPrinter);
+                }
             }
-
-            formatter.missing(runtime.getSnippets());
         } catch (CucumberException e) {
             testSummary.add(ExecutionResult.ERROR);
-            testSystemListener.testOutputChunk("<span class='error'>Test execution failed: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()) + "</span>");
+            outputPrinter.write("<span class='error'>Test execution failed: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()) + "</span>");
         } finally {
             Thread.currentThread().setContextClassLoader(originalClassLoader);
-            testSystemListener.testComplete(testPage, testSummary);
+            outputPrinter.flush();
+            long duration = System.nanoTime() - start;
+            CucumberMetrics.getInstance().pageCompleted(pageName, duration);
+            if (pageHtml != null && featurePath != null) {
+                try {
+                    new ShardReport(new File(shardReport), shard).add(shardKey, testSummary,
+                            TimeUnit.NANOSECONDS.toMillis(duration), pageHtml.toString());
+                } catch (IOException e) {
+                    errorPrinter.write(format("Unable to write shard report: %s%n", e.getMessage()));
+                }
+            }
+            listener.testComplete(testPage, testSummary);
         }
     }
 
-    public String getPath(TestPage testPage) {
-        WikiPage sourcePage = ((WikiTestPage) testPage).getSourcePage();
-        if (sourcePage instanceof FileSystemPage) {
-            return ((FileSystemPage) sourcePage).getFileSystemPath().getPath();
-        } else if (sourcePage instanceof CucumberFeaturePage) {
-            return ((CucumberFeaturePage) sourcePage).getFileSystemPath().getPath();
+    private void runFeatures(TestPage testPage, String featurePath, ScenarioHistory history,
+                             FitNesseResultFormatter formatter, TestSummary testSummary, Printer errorPrinter) {
+        String gluePath = testPage.getVariable("cucumber.glue");
+        int scenarioThreads = threads(testPage.getVariable(PARALLEL_SCENARIOS));
+
+        final ParsedFeature parsedFeature = parsedFeature(testPage);
+        final Map<Integer, ScenarioHistory.Outcome> previousOutcomes = history != null && isRerun(testPage)
+                ? previousOutcomes(history, featurePath, errorPrinter) : null;
+        ScenarioFilter scenarioFilter = ScenarioFilter.forPage(testPage);
+        if (previousOutcomes != null) {
+            scenarioFilter = scenarioFilter.onLines(failedLines(previousOutcomes));
+        }
+        final List<CucumberFeature> cucumberFeatures = buildFeatures(parsedFeature, scenarioFilter);
+
+        long scenarioTimeout = TimeUnit.SECONDS.toMillis(intVariable(testPage, SCENARIO_TIMEOUT, 0));
+        long pageTimeout = TimeUnit.SECONDS.toMillis(intVariable(testPage, PAGE_TIMEOUT, 0));
+        if (scenarioThreads > 1 || scenarioTimeout > 0 || pageTimeout > 0) {
+            // A scenario that hangs can only be given up on when it runs on a thread of its own
+            new ParallelScenarioRunner(runtimeCache, gluePath, classLoader, scenarioThreads, scenarioTimeout, pageTimeout, errorPrinter)
+                    .run(cucumberFeatures, formatter, testSummary);
+        } else if (isBatch(testPage)) {
+            Runtime runtime = suiteRuntime(gluePath);
+            boolean completed = false;
+            try {
+                for (CucumberFeature cucumberFeature : cucumberFeatures) {
+                    ExampleScenarios.run(cucumberFeature, formatter, formatter, runtime);
+                }
+
+                formatter.missing(newSnippets(runtime.getSnippets()));
+                completed = RuntimeCache.resetPageState(runtime);
+            } finally {
+                if (!completed) {
+                    dropSuiteRuntime(gluePath, runtime);
+                }
+            }
+        } else {
+            Runtime runtime = runtimeCache.acquire(gluePath);
+            boolean completed = false;
+            try {
+                for (CucumberFeature cucumberFeature : cucumberFeatures) {
+                    ExampleScenarios.run(cucumberFeature, formatter, formatter, runtime);
+                }
+
+                formatter.missing(runtime.getSnippets());
+                completed = true;
+            } finally {
+                // A runtime the page failed in is dropped, not handed back
+                if (completed) {
+                    runtimeCache.release(gluePath, runtime);
+                }
+            }
+        }
+
+        if (!scenarioFilter.isEmpty()) {
+            Map<Integer, String> excluded = ScenarioFilter.excluded(buildFeatures(parsedFeature, null), cucumberFeatures);
+            if (previousOutcomes != null) {
+                previousOutcomes.keySet().removeAll(formatter.getOutcomes().keySet());
+                previousOutcomes.keySet().retainAll(excluded.keySet());
+                excluded.keySet().removeAll(previousOutcomes.keySet());
+                formatter.previous(previousOutcomes.values());
+            }
+            formatter.excluded(excluded.values());
+        }
+        if (history != null) {
+            recordOutcomes(history, featurePath, formatter.getOutcomes(), previousOutcomes != null, errorPrinter);
         }
-        throw new RuntimeException("Can not parse file as Cucumber feature file: " + sourcePage);
     }
 
-    @Override
-    public boolean isSuccessfullyStarted() {
-        return started;
+    /**
+     * Number of worker threads configured by a variable. Can be a number, or "true" to use a thread per processor.
+     */
+    static int threads(String value) {
+        if (value == null || value.trim().isEmpty() || "false".equalsIgnoreCase(value.trim())) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return java.lang.Runtime.getRuntime().availableProcessors();
+        }
     }
 
-    @Override
-    public void addTestSystemListener(TestSystemListener listener) {
-        testSystemListener.addTestSystemListener(listener);
+    /**
+     * Path used to identify the feature in the scenario history: the feature file, or else the wiki page.
+     */
+    static String featurePath(TestPage testPage) {
+        if (testPage instanceof WikiTestPage && ((WikiTestPage) testPage).getSourcePage() instanceof CucumberFeaturePage) {
+            return ((CucumberFeaturePage) ((WikiTestPage) testPage).getSourcePage()).getFileSystemPath().getPath();
+        }
+        return testPage.getFullPath();
+    }
+
+    /**
+     * In batch mode, pages that run one after another share a runtime for the lifetime of the test system,
+     * and a suite's feature files are all parsed as soon as its first page runs.
+     */
+    private boolean isBatch(TestPage testPage) {
+        return pageExecutor == null && "true".equalsIgnoreCase(trim(testPage.getVariable(BATCH)));
+    }
+
+    private Runtime suiteRuntime(String gluePath) {
+        synchronized (suiteRuntimes) {
+            Runtime runtime = suiteRuntimes.get(gluePath);
+            if (runtime == null) {
+                runtime = runtimeCache.acquire(gluePath);
+                suiteRuntimes.put(gluePath, runtime);
+            }
+            return runtime;
+        }
+    }
+
+    /**
+     * Stop sharing a suite runtime that a page failed in, the next page gets a fresh one.
+     */
+    private void dropSuiteRuntime(String gluePath, Runtime runtime) {
+        synchronized (suiteRuntimes) {
+            if (suiteRuntimes.get(gluePath) == runtime) {
+                suiteRuntimes.remove(gluePath);
+            }
+        }
+    }
+
+    /**
+     * Snippets for undefined steps that no earlier page of the suite has shown yet.
+     */
+    private List<String> newSnippets(List<String> snippets) {
+        List<String> newSnippets = new ArrayList<>();
+        synchronized (reportedSnippets) {
+            for (String snippet : snippets) {
+                if (reportedSnippets.add(snippet)) {
+                    newSnippets.add(snippet);
+                }
+            }
+        }
+        return newSnippets;
+    }
+
+    /**
+     * Parse all feature files of the suite a feature page belongs to in the background, so they are
+     * ready by the time their pages run.
+     */
+    private void preloadSuite(TestPage testPage) {
+        if (!(testPage instanceof WikiTestPage) || !(((WikiTestPage) testPage).getSourcePage() instanceof CucumberFeaturePage)) {
+            return;
+        }
+        final WikiPage suite = ((WikiTestPage) testPage).getSourcePage().getParent();
+        if (!(suite instanceof CucumberTocPage)) {
+            return;
+        }
+        synchronized (suiteRuntimes) {
+            if (!preloadedSuites.add(((CucumberTocPage) suite).getFileSystemPath())) {
+                return;
+            }
+            if (preloader == null) {
+                preloader = Executors.newSingleThreadExecutor(new CucumberThreadFactory("cucumber-preload", classLoader));
+            }
+            preloader.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (WikiPage page : suite.getChildren()) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                        if (page instanceof CucumberFeaturePage) {
+                            try {
+                                FeatureCache.getInstance().get(((CucumberFeaturePage) page).getFileSystemPath());
+                            } catch (IOException | RuntimeException e) {
+                                // The page reports it when it runs
+                            }
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * A page variable, or else the system property of the same name.
+     */
+    static String variable(TestPage testPage, String name) {
+        String value = testPage.getVariable(name);
+        return value != null ? value : System.getProperty(name);
+    }
+
+    /**
+     * Path a feature is known by to all shards: relative to the directory of the features, the topmost feature
+     * directory page. Other pages go by their wiki path.
+     */
+    static String shardKey(TestPage testPage) {
+        if (testPage instanceof CucumberWorker.ForkedPage) {
+            return ((CucumberWorker.ForkedPage) testPage).getShardKey();
+        }
+        if (testPage instanceof WikiTestPage && ((WikiTestPage) testPage).getSourcePage() instanceof CucumberFeaturePage) {
+            CucumberFeaturePage featurePage = (CucumberFeaturePage) ((WikiTestPage) testPage).getSourcePage();
+            File root = featurePage.getFileSystemPath().getAbsoluteFile().getParentFile();
+            WikiPage page = featurePage;
+            while (page.getParent() instanceof CucumberTocPage && page.getParent() != page) {
+                page = page.getParent();
+                root = ((CucumberTocPage) page).getFileSystemPath().getAbsoluteFile();
+            }
+            return root.toURI().relativize(featurePage.getFileSystemPath().getAbsoluteFile().toURI()).getPath();
+        }
+        return testPage.getFullPath();
+    }
+
+    /**
+     * Shards planned from the feature durations in the shared durations file. Without one, features are divided
+     * by path.
+     */
+    private static ShardPlan shardPlan(TestPage testPage, int shardCount, Printer errorPrinter) {
+        String durations = trim(variable(testPage, SHARD_DURATIONS));
+        if (durations != null && !durations.isEmpty()) {
+            try {
+                return ShardPlan.forFile(new File(durations), shardCount);
+            } catch (IOException e) {
+                errorPrinter.write(format("Unable to read shard durations: %s%n", e.getMessage()));
+            }
+        }
+        return new ShardPlan(Collections.<String, Long>emptyMap(), shardCount);
+    }
+
+    private static ScenarioHistory scenarioHistory(TestPage testPage) {
+        String file = testPage.getVariable(HISTORY);
+        return file == null || file.trim().isEmpty() ? null : ScenarioHistory.forFile(new File(file.trim()));
+    }
+
+    private static EmbeddingStore embeddingStore(TestPage testPage) {
+        String dir = trim(testPage.getVariable(EMBEDDINGS));
+        String url = trim(testPage.getVariable(EMBEDDINGS_URL));
+        return dir == null || dir.isEmpty() ? null : new EmbeddingStore(new File(dir), url == null || url.isEmpty() ? null : url);
+    }
+
+    private static boolean isRerun(TestPage testPage) {
+        String rerun = testPage.getVariable(RERUN);
+        return rerun != null && ("failed".equalsIgnoreCase(rerun.trim()) || "true".equalsIgnoreCase(rerun.trim()));
+    }
+
+    private static Map<Integer, ScenarioHistory.Outcome> previousOutcomes(ScenarioHistory history, String featurePath, Printer errorPrinter) {
+        try {
+            return history.get(featurePath);
+        } catch (IOException e) {
+            errorPrinter.write(format("Unable to read scenario history: %s%n", e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Identifies what a page runs: the feature, the glue and filters, and the state of the class path.
+     */
+    private String fingerprint(TestPage testPage) {
+        String content;
+        if (testPage instanceof WikiTestPage && ((WikiTestPage) testPage).getSourcePage() instanceof CucumberFeaturePage) {
+            File featureFile = ((CucumberFeaturePage) ((WikiTestPage) testPage).getSourcePage()).getFileSystemPath();
+            try {
+                content = FeatureFile.read(featureFile);
+            } catch (IOException e) {
+                throw new CucumberException(format("Unable to read feature file %s", featureFile), e);
+            }
+        } else {
+            content = testPage.getContent();
+        }
+        return FeatureCache.checksum(content + "\n" + testPage.getVariable("cucumber.glue")
+                + "\n" + testPage.getVariable(ScenarioFilter.TAGS) + "\n" + testPage.getVariable(ScenarioFilter.NAME)
+                + "\n" + classPathStamp());
+    }
+
+    private String classPathStamp() {
+        if (classPathStamp == null) {
+            List<String> classPath = new ArrayList<>();
+            if (classLoader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                    try {
+                        classPath.add(new File(url.toURI()).getPath());
+                    } catch (URISyntaxException | IllegalArgumentException e) {
+                        classPath.add(url.toString());
+                    }
+                }
+            }
+            classPathStamp = classPath + ClassLoaderPool.stamp(classPath);
+        }
+        return classPathStamp;
     }
 
-    private void testOutputChunk(final String text) {
-        testSystemListener.testOutputChunk(text);
+    /**
+     * Outcomes of the last run, if it passed with the same fingerprint.
+     */
+    private static Map<Integer, ScenarioHistory.Outcome> greenRun(ScenarioHistory history, String featurePath, String fingerprint, Printer errorPrinter) {
+        try {
+            return fingerprint.equals(history.getFingerprint(featurePath)) ? history.get(featurePath) : null;
+        } catch (IOException e) {
+            errorPrinter.write(format("Unable to read scenario history: %s%n", e.getMessage()));
+            return null;
+        }
+    }
+
+    private static void recordGreenRun(ScenarioHistory history, String featurePath, String fingerprint, Printer errorPrinter) {
+        try {
+            history.setFingerprint(featurePath, fingerprint);
+        } catch (IOException e) {
+            errorPrinter.write(format("Unable to write scenario history: %s%n", e.getMessage()));
+        }
     }
 
-    private static class PageResource implements Resource {
-        private final TestPage testPage;
+    private static String trim(String value) {
+        return value != null ? value.trim() : null;
+    }
 
-        public PageResource(final TestPage testPage) {
-            this.testPage = testPage;
+    private static List<Integer> failedLines(Map<Integer, ScenarioHistory.Outcome> outcomes) {
+        List<Integer> lines = new ArrayList<>();
+        for (Map.Entry<Integer, ScenarioHistory.Outcome> outcome : outcomes.entrySet()) {
+            if (outcome.getValue().isFailed()) {
+                lines.add(outcome.getKey());
+            }
         }
+        return lines;
+    }
 
-        @Override
-        public String getPath() {
-            return "fitnesse";
+    private static void recordOutcomes(ScenarioHistory history, String featurePath, Map<Integer, ScenarioHistory.Outcome> outcomes,
+                                       boolean merge, Printer errorPrinter) {
+        try {
+            history.update(featurePath, outcomes, merge);
+        } catch (IOException e) {
+            errorPrinter.write(format("Unable to write scenario history: %s%n", e.getMessage()));
         }
+    }
 
-        @Override
-        public String getAbsolutePath() {
-            return "fitnesse";
+    /**
+     * Feature pages are read straight from their feature file (as UTF-8), other pages from their wiki content.
+     */
+    private static ParsedFeature parsedFeature(TestPage testPage) {
+        if (testPage instanceof WikiTestPage && ((WikiTestPage) testPage).getSourcePage() instanceof CucumberFeaturePage) {
+            File featureFile = ((CucumberFeaturePage) ((WikiTestPage) testPage).getSourcePage()).getFileSystemPath();
+            try {
+                return FeatureCache.getInstance().get(featureFile);
+            } catch (IOException e) {
+                throw new CucumberException(format("Unable to read feature file %s", featureFile), e);
+            }
         }
+        return FeatureCache.getInstance().get(testPage.getContent());
+    }
 
-        @Override
-        public InputStream getInputStream() throws IOException {
-            return new ByteArrayInputStream(testPage.getContent().getBytes());
+    private static List<CucumberFeature> buildFeatures(ParsedFeature parsedFeature, ScenarioFilter scenarioFilter) {
+        final List<CucumberFeature> cucumberFeatures = new ArrayList<>();
+        final FeatureBuilder builder = new FeatureBuilder(cucumberFeatures);
+
+        builder.uri(FEATURE_PATH);
+        try {
+            parsedFeature.replay(scenarioFilter != null ? scenarioFilter.filter(builder) : builder);
+        } catch (ParseError e) {
+            throw new CucumberException(format("Error parsing feature file %s", FEATURE_PATH), e);
         }
+        for (CucumberFeature cucumberFeature : cucumberFeatures) {
+            cucumberFeature.setI18n(parsedFeature.getI18n());
+        }
+        return cucumberFeatures;
+    }
 
-        @Override
-        public String getClassName(final String extension) {
-            return "fitnesse";
+    private static int intVariable(TestPage testPage, String name, int defaultValue) {
+        return intValue(testPage.getVariable(name), defaultValue);
+    }
+
+    static int intValue(String value, int defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
         }
     }
 
+    public String getPath(TestPage testPage) {
+        WikiPage sourcePage = ((WikiTestPage) testPage).getSourcePage();
+        if (sourcePage instanceof FileSystemPage) {
+            return ((FileSystemPage) sourcePage).getFileSystemPath().getPath();
+        } else if (sourcePage instanceof CucumberFeaturePage) {
+            return ((CucumberFeaturePage) sourcePage).getFileSystemPath().getPath();
+        }
+        throw new RuntimeException("Can not parse file as Cucumber feature file: " + sourcePage);
+    }
 
+    @Override
+    public boolean isSuccessfullyStarted() {
+        return started;
+    }
+
+    @Override
+    public void addTestSystemListener(TestSystemListener listener) {
+        testSystemListener.addTestSystemListener(listener);
+    }
 }
@@ -10,16 +10,74 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.String.format;
 
 public class CucumberTestSystemFactory implements TestSystemFactory {
+    public static final String CLASS_LOADER_TTL = "cucumber.classloader.ttl";
+    public static final String WORKERS = "cucumber.workers";
+    public static final String WORKER_PAGES = "cucumber.workers.pages";
+    public static final String WORKER_HEAP = "cucumber.workers.heap";
+    public static final String WORKER_JVM_ARGS = "cucumber.workers.jvmargs";
+
+    private final ClassLoaderPool classLoaderPool = new ClassLoaderPool(getClass().getClassLoader());
+    private final WorkerPool workerPool = new WorkerPool();
 
     @Override
     public TestSystem create(Descriptor descriptor) {
-        URLClassLoader classLoader = new URLClassLoader(getUrlsFromClassPath(descriptor), getClass().getClassLoader());
-        return new CucumberTestSystem(descriptor.getTestSystem(), descriptor.getExecutionLogListener(), classLoader);
+        String workers = descriptor.getVariable(WORKERS);
+        if (workers != null && !workers.trim().isEmpty() && !"false".equalsIgnoreCase(workers.trim())) {
+            return new ForkedCucumberTestSystem(descriptor.getTestSystem(), descriptor.getExecutionLogListener(), workerPool,
+                    descriptor.getClassPath().getElements(), jvmArgs(descriptor), CucumberTestSystem.threads(workers),
+                    (int) number(descriptor, WORKER_PAGES),
+                    number(descriptor, WORKER_HEAP) * 1024 * 1024);
+        }
+        long timeToLive = classLoaderTimeToLive(descriptor);
+        URLClassLoader classLoader = timeToLive > 0
+                ? classLoaderPool.acquire(descriptor.getClassPath().getElements(), timeToLive)
+                : new URLClassLoader(getUrlsFromClassPath(descriptor), getClass().getClassLoader());
+        return new CucumberTestSystem(descriptor.getTestSystem(), descriptor.getExecutionLogListener(), classLoader,
+                CucumberTestSystem.threads(descriptor.getVariable(CucumberTestSystem.PARALLEL_PAGES)),
+                descriptor.getVariable("cucumber.glue"));
+    }
+
+    /**
+     * Class loaders are reused between test systems if a time-to-live (in seconds) for idle class loaders is defined.
+     */
+    private static long classLoaderTimeToLive(Descriptor descriptor) {
+        String value = descriptor.getVariable(CLASS_LOADER_TTL);
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(format("%s should be a number of seconds, not '%s'", CLASS_LOADER_TTL, value), e);
+        }
+    }
+
+    private static List<String> jvmArgs(Descriptor descriptor) {
+        String value = descriptor.getVariable(WORKER_JVM_ARGS);
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(value.trim().split("\\s+"));
+    }
+
+    private static long number(Descriptor descriptor, String variable) {
+        String value = descriptor.getVariable(variable);
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(format("%s should be a number, not '%s'", variable, value), e);
+        }
     }
 
     private URL[] getUrlsFromClassPath(Descriptor descriptor) {
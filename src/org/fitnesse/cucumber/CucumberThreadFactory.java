@@ -0,0 +1,27 @@
+package org.fitnesse.cucumber;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates daemon threads that have the test system's class loader as context class loader.
+ */
+class CucumberThreadFactory implements ThreadFactory {
+    private final ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+    private final String prefix;
+    private final ClassLoader classLoader;
+
+    public CucumberThreadFactory(String prefix, ClassLoader classLoader) {
+        this.prefix = prefix;
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = defaultThreadFactory.newThread(runnable);
+        thread.setName(prefix + "-" + thread.getName());
+        thread.setContextClassLoader(classLoader);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
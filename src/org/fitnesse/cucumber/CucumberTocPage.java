@@ -6,16 +6,66 @@ import fitnesse.wikitext.parser.VariableSource;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * A directory of feature files. Pages are shared, by directory, so their child pages survive between lookups: FitNesse
+ * asks the page factory for a new page on every lookup. The least recently used directories are evicted once more
+ * than {@code cucumber.toc.cache} (a system property, default 1000) are kept.
+ */
 public class CucumberTocPage extends BaseWikitextPage {
     private static final String CONTENTS = "!contents";
+    // File systems may keep modification times in whole seconds, a listing is only trusted once it is this much newer
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+    private static final Map<File, CucumberTocPage> PAGES = new PageCache(Integer.getInteger("cucumber.toc.cache", 1000));
 
     private final File path;
+    // Pages are shared by lookups from parents that are each loaded anew
+    private volatile WikiPage currentParent;
+    private List<WikiPage> children;
+    private Map<String, WikiPage> childrenByName;
+    private long childrenLastModified;
+    private long childrenListed;
 
     public CucumberTocPage(File path, String name, WikiPage parent, VariableSource variableSource) {
         super(name, parent, variableSource);
         this.path = path;
+        this.currentParent = parent;
+    }
+
+    /**
+     * The page of a directory, shared with earlier lookups of the same page.
+     */
+    static CucumberTocPage forDirectory(File path, String name, WikiPage parent, VariableSource variableSource) {
+        File key = path.getAbsoluteFile();
+        synchronized (PAGES) {
+            CucumberTocPage page = PAGES.get(key);
+            if (page != null && page.getName().equals(name) && page.getVariableSource() == variableSource
+                    && (parent == null ? page.currentParent == null : parent.equals(page.currentParent))) {
+                // The same page, the new parent has its data freshly loaded
+                page.currentParent = parent;
+                return page;
+            }
+            page = new CucumberTocPage(path, name, parent, variableSource);
+            PAGES.put(key, page);
+            return page;
+        }
+    }
+
+    @Override
+    public WikiPage getParent() {
+        WikiPage parent = currentParent;
+        return parent == null ? this : parent;
+    }
+
+    @Override
+    public boolean isRoot() {
+        WikiPage parent = currentParent;
+        return parent == null || parent == this;
     }
 
     @Override
@@ -29,13 +79,9 @@ public class CucumberTocPage extends BaseWikitextPage {
     }
 
     @Override
-    public WikiPage getChildPage(String name) {
-        for (WikiPage child : getChildren()) {
-            if (name.equals(child.getName())) {
-                return child;
-            }
-        }
-        return null;
+    public synchronized WikiPage getChildPage(String name) {
+        children();
+        return childrenByName.get(name);
     }
 
     @Override
@@ -45,15 +91,61 @@ public class CucumberTocPage extends BaseWikitextPage {
 
     @Override
     public List<WikiPage> getChildren() {
-        List<WikiPage> children = new ArrayList<WikiPage>();
-        for (String child : path.list()) {
+        return new ArrayList<>(children());
+    }
+
+    public File getFileSystemPath() {
+        return path;
+    }
+
+    /**
+     * Children in directory order. The directory is listed again only when its modification time changed, or when it
+     * was listed too soon after it changed to tell. Pages for files that are still there are kept.
+     */
+    private synchronized List<WikiPage> children() {
+        long lastModified = path.lastModified();
+        if (children == null || lastModified != childrenLastModified
+                || childrenListed < lastModified + MODIFICATION_TIME_RESOLUTION) {
+            long listed = System.currentTimeMillis();
+            children = loadChildren(children == null ? Collections.<WikiPage>emptyList() : children);
+            // Names can collide (a.feature and a.v2.feature, or foo.feature and foo/), lookups get the first page
+            childrenByName = new HashMap<>();
+            for (WikiPage child : children) {
+                if (!childrenByName.containsKey(child.getName())) {
+                    childrenByName.put(child.getName(), child);
+                }
+            }
+            childrenLastModified = lastModified;
+            childrenListed = listed;
+        }
+        return children;
+    }
+
+    private List<WikiPage> loadChildren(List<WikiPage> previousChildren) {
+        Map<File, WikiPage> previousByPath = new HashMap<>();
+        for (WikiPage previous : previousChildren) {
+            if (previous instanceof CucumberFeaturePage) {
+                previousByPath.put(((CucumberFeaturePage) previous).getFileSystemPath(), previous);
+            } else if (previous instanceof CucumberTocPage) {
+                previousByPath.put(((CucumberTocPage) previous).getFileSystemPath(), previous);
+            }
+        }
+        List<WikiPage> children = new ArrayList<>();
+        String[] childNames = path.list();
+        if (childNames == null) {
+            return children;
+        }
+        for (String child : childNames) {
             File childPath = new File(path, child);
+            WikiPage previous = previousByPath.get(childPath);
             if (CucumberPageFactory.isFeatureFile(childPath)) {
-                children.add(new CucumberFeaturePage(childPath,
-                        child.split("\\.", 2)[0], this));
+                children.add(previous instanceof CucumberFeaturePage
+                        ? previous
+                        : new CucumberFeaturePage(childPath, child.split("\\.", 2)[0], this));
             } else if (childPath.isDirectory()) {
-                children.add(new CucumberTocPage(childPath,
-                        childPath.getName(), this, getVariableSource()));
+                children.add(previous instanceof CucumberTocPage
+                        ? previous
+                        : forDirectory(childPath, childPath.getName(), this, getVariableSource()));
             }
         }
         return children;
@@ -85,4 +177,19 @@ public class CucumberTocPage extends BaseWikitextPage {
         return null;
     }
 
+    private static class PageCache extends LinkedHashMap<File, CucumberTocPage> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        PageCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, CucumberTocPage> eldest) {
+            return size() > maxSize;
+        }
+    }
+
 }
@@ -0,0 +1,287 @@
+package org.fitnesse.cucumber;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import fitnesse.testsystems.Assertion;
+import fitnesse.testsystems.ClassPath;
+import fitnesse.testsystems.ExceptionResult;
+import fitnesse.testsystems.ExecutionLogListener;
+import fitnesse.testsystems.TestPage;
+import fitnesse.testsystems.TestResult;
+import fitnesse.testsystems.TestSummary;
+import fitnesse.testsystems.TestSystem;
+import fitnesse.testsystems.TestSystemListener;
+
+/**
+ * Runs pages for a {@link ForkedCucumberTestSystem} in a JVM of its own, until its input is closed:
+ * <pre>java -cp plugin-and-test-class-path org.fitnesse.cucumber.CucumberWorker</pre>
+ * Pages come in on standard input, their output, errors and summary go back on standard output.
+ * Whatever the glue writes to {@code System.out} ends up on standard error.
+ */
+public class CucumberWorker {
+    static final int PAGE = 'P';
+    static final int OUTPUT = 'O';
+    static final int ERROR = 'E';
+    static final int COMPLETE = 'C';
+
+    /** Page variables the test system reads, these are sent along with every page. */
+    static final String[] VARIABLES = {
+            "cucumber.glue",
+            CucumberTestSystem.PARALLEL_SCENARIOS,
+            CucumberTestSystem.OUTPUT_BUFFER_SIZE,
+            CucumberTestSystem.OUTPUT_FLUSH_INTERVAL,
+            CucumberTestSystem.HISTORY,
+            CucumberTestSystem.RERUN,
+            CucumberTestSystem.INCREMENTAL,
+            CucumberTestSystem.SCENARIO_TIMEOUT,
+            CucumberTestSystem.PAGE_TIMEOUT,
+            CucumberTestSystem.SHARD_INDEX,
+            CucumberTestSystem.SHARD_COUNT,
+            CucumberTestSystem.SHARD_REPORT,
+            CucumberTestSystem.SHARD_DURATIONS,
+            CucumberTestSystem.BATCH,
+            CucumberTestSystem.EMBEDDINGS,
+            CucumberTestSystem.EMBEDDINGS_URL,
+            ScenarioFilter.TAGS,
+            ScenarioFilter.NAME
+    };
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private TestSummary testSummary;
+
+    CucumberWorker(DataInputStream in, DataOutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        System.setOut(System.err);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        new CucumberWorker(in, out).run();
+        System.exit(0);
+    }
+
+    void run() throws IOException {
+        CucumberTestSystem testSystem = new CucumberTestSystem("cucumber", new ExecutionLogListener() {
+            @Override
+            public void commandStarted(ExecutionContext context) {
+            }
+
+            @Override
+            public void stdOut(String output) {
+            }
+
+            @Override
+            public void stdErr(String output) {
+                send(ERROR, output);
+            }
+
+            @Override
+            public void exitCode(int exitCode) {
+            }
+
+            @Override
+            public void exceptionOccurred(Throwable e) {
+                send(ERROR, stackTrace(e));
+            }
+        }, getClass().getClassLoader());
+        testSystem.addTestSystemListener(new TestSystemListener() {
+            @Override
+            public void testSystemStarted(TestSystem testSystem) {
+            }
+
+            @Override
+            public void testOutputChunk(String output) {
+                send(OUTPUT, output);
+            }
+
+            @Override
+            public void testStarted(TestPage testPage) {
+            }
+
+            @Override
+            public void testComplete(TestPage testPage, TestSummary summary) {
+                testSummary = summary;
+            }
+
+            @Override
+            public void testSystemStopped(TestSystem testSystem, Throwable cause) {
+            }
+
+            @Override
+            public void testAssertionVerified(Assertion assertion, TestResult testResult) {
+            }
+
+            @Override
+            public void testExceptionOccurred(Assertion assertion, ExceptionResult exceptionResult) {
+            }
+        });
+        testSystem.start();
+
+        TestPage testPage;
+        while ((testPage = readPage()) != null) {
+            testSummary = new TestSummary();
+            try {
+                testSystem.runTests(testPage);
+            } catch (RuntimeException e) {
+                send(ERROR, stackTrace(e));
+            }
+            complete(testSummary);
+        }
+    }
+
+    private TestPage readPage() throws IOException {
+        int request;
+        try {
+            request = in.readByte();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (request != PAGE) {
+            throw new IOException("Unexpected request " + request);
+        }
+        String name = readString(in);
+        String fullPath = readString(in);
+        String shardKey = readString(in);
+        String content = readString(in);
+        Map<String, String> variables = new HashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            variables.put(readString(in), readString(in));
+        }
+        return new ForkedPage(name, fullPath, shardKey, content, variables);
+    }
+
+    private synchronized void send(int response, String text) {
+        try {
+            out.writeByte(response);
+            writeString(out, text);
+            out.flush();
+        } catch (IOException e) {
+            // The test system is gone, the next read ends this worker
+        }
+    }
+
+    private synchronized void complete(TestSummary summary) throws IOException {
+        out.writeByte(COMPLETE);
+        out.writeInt(summary.getRight());
+        out.writeInt(summary.getWrong());
+        out.writeInt(summary.getIgnores());
+        out.writeInt(summary.getExceptions());
+        out.writeLong(retainedHeap());
+        out.flush();
+    }
+
+    /**
+     * Heap in use after the last garbage collection, so garbage that has not been collected yet does not count.
+     */
+    static long retainedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+                    ? pool.getCollectionUsage() : null;
+            if (usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static String stackTrace(Throwable e) {
+        StringWriter stackTrace = new StringWriter();
+        e.printStackTrace(new PrintWriter(stackTrace));
+        return stackTrace.toString();
+    }
+
+    static void writeString(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A page as sent by the test system. Its full path is the path the feature is known by in the scenario history,
+     * its shard key the path it is known by to the shards.
+     */
+    static class ForkedPage implements TestPage {
+        private final String name;
+        private final String fullPath;
+        private final String shardKey;
+        private final String content;
+        private final Map<String, String> variables;
+
+        ForkedPage(String name, String fullPath, String shardKey, String content, Map<String, String> variables) {
+            this.name = name;
+            this.fullPath = fullPath;
+            this.shardKey = shardKey;
+            this.content = content;
+            this.variables = variables;
+        }
+
+        public String getShardKey() {
+            return shardKey;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getFullPath() {
+            return fullPath;
+        }
+
+        @Override
+        public String getVariable(String variable) {
+            return variables.get(variable);
+        }
+
+        @Override
+        public ClassPath getClassPath() {
+            return null;
+        }
+
+        @Override
+        public String getContent() {
+            return content;
+        }
+
+        @Override
+        public String getHtml() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import cucumber.runtime.CucumberException;
+
+import static java.lang.String.format;
+
+/**
+ * Keeps the screenshots and other attachments scenarios embed as files in a directory, named by the SHA-256 of
+ * their content, so an attachment that is embedded again is stored only once. Pages link to the files instead of
+ * carrying the data.
+ * <p>
+ * Files are written in the background, by a single thread shared by all test systems in the JVM. A file appears
+ * under its final name only once it is complete. A file that is removed from the directory is written again the next
+ * time its content is embedded.
+ */
+class EmbeddingStore {
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(new CucumberThreadFactory("cucumber-embeddings", null));
+    // Files that are waiting to be written, by absolute path
+    private static final Set<String> PENDING = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static final Map<String, String> EXTENSIONS = new HashMap<>();
+
+    static {
+        EXTENSIONS.put("image/png", "png");
+        EXTENSIONS.put("image/jpeg", "jpg");
+        EXTENSIONS.put("image/gif", "gif");
+        EXTENSIONS.put("image/svg+xml", "svg");
+        EXTENSIONS.put("text/plain", "txt");
+        EXTENSIONS.put("text/html", "html");
+        EXTENSIONS.put("application/json", "json");
+        EXTENSIONS.put("application/xml", "xml");
+    }
+
+    private final File dir;
+    private final String url;
+
+    /**
+     * @param url URL the directory is served at, if null it is derived from the directory: FitNesse serves
+     *            {@code FitNesseRoot/files} at {@code /files}, other directories are linked as file URLs
+     */
+    public EmbeddingStore(File dir, String url) {
+        this.dir = dir.getAbsoluteFile();
+        this.url = url != null ? url.replaceAll("/+$", "") : defaultUrl(dir);
+    }
+
+    /**
+     * Store an attachment, unless a file with the same content is there already.
+     *
+     * @return URL of the file
+     */
+    public String store(String mimeType, final byte[] data, final Printer errorPrinter) {
+        final String name = checksum(data) + "." + extension(mimeType);
+        final File file = new File(dir, name);
+        if (!file.exists() && PENDING.add(file.getPath())) {
+            WRITER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        write(file, data);
+                    } catch (IOException e) {
+                        errorPrinter.write(format("Unable to store embedding %s: %s%n", file, e.getMessage()));
+                    } finally {
+                        PENDING.remove(file.getPath());
+                    }
+                }
+            });
+        }
+        return url + "/" + name;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        if (file.exists()) {
+            return;
+        }
+        Files.createDirectories(file.getParentFile().toPath());
+        Path temp = Files.createTempFile(file.getParentFile().toPath(), ".embedding", ".tmp");
+        try {
+            Files.write(temp, data);
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Wait until the files stored so far are written.
+     */
+    static void awaitWrites() throws InterruptedException {
+        try {
+            WRITER.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            throw new CucumberException(e.getCause());
+        }
+    }
+
+    static boolean isImage(String mimeType) {
+        return mimeType != null && mimeType.startsWith("image/");
+    }
+
+    private static String extension(String mimeType) {
+        String extension = mimeType != null ? EXTENSIONS.get(mimeType.toLowerCase()) : null;
+        return extension != null ? extension : "bin";
+    }
+
+    private static String defaultUrl(File dir) {
+        String path = "/" + dir.getPath().replace(File.separatorChar, '/') + "/";
+        int files = path.lastIndexOf("/files/");
+        return files >= 0 ? path.substring(files, path.length() - 1)
+                : dir.getAbsoluteFile().toURI().toString().replaceAll("/+$", "");
+    }
+
+    private static String checksum(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder checksum = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                checksum.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return checksum.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.fitnesse.cucumber;
+
+import java.util.Arrays;
+import java.util.List;
+
+import cucumber.runtime.Runtime;
+import cucumber.runtime.model.CucumberExamples;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberScenario;
+import cucumber.runtime.model.CucumberScenarioOutline;
+import cucumber.runtime.model.CucumberTagStatement;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.ExamplesTableRow;
+
+/**
+ * Creates the scenarios of an examples table one row at a time, as they are run. Cucumber creates the scenarios
+ * of all rows before it runs the first, so a large table has all of them in memory at once.
+ */
+class ExampleScenarios {
+
+    private ExampleScenarios() {
+    }
+
+    /**
+     * The scenario of a single row of an examples table.
+     */
+    public static CucumberScenario scenario(CucumberScenarioOutline outline, CucumberExamples cucumberExamples, ExamplesTableRow row) {
+        Examples examples = cucumberExamples.getExamples();
+        Examples single = new Examples(examples.getComments(), examples.getTags(), examples.getKeyword(),
+                examples.getName(), examples.getDescription(), examples.getLine(), examples.getId(),
+                Arrays.asList(examples.getRows().get(0), row));
+        return new CucumberExamples(outline, single).createExampleScenarios().get(0);
+    }
+
+    /**
+     * Run a feature the way {@link CucumberFeature#run} does, but with the scenarios of examples created per row.
+     */
+    public static void run(CucumberFeature cucumberFeature, Formatter formatter, Reporter reporter, Runtime runtime) {
+        formatter.uri(cucumberFeature.getPath());
+        formatter.feature(cucumberFeature.getGherkinFeature());
+        for (CucumberTagStatement statement : cucumberFeature.getFeatureElements()) {
+            if (statement instanceof CucumberScenarioOutline) {
+                CucumberScenarioOutline outline = (CucumberScenarioOutline) statement;
+                outline.formatOutlineScenario(formatter);
+                for (CucumberExamples cucumberExamples : outline.getCucumberExamplesList()) {
+                    cucumberExamples.format(formatter);
+                    List<ExamplesTableRow> rows = cucumberExamples.getExamples().getRows();
+                    for (ExamplesTableRow row : rows.subList(1, rows.size())) {
+                        scenario(outline, cucumberExamples, row).run(formatter, reporter, runtime);
+                    }
+                }
+            } else {
+                statement.run(formatter, reporter, runtime);
+            }
+        }
+        formatter.eof();
+    }
+}
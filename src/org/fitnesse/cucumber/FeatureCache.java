@@ -0,0 +1,157 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed features, shared by page rendering and test execution.
+ * <p>
+ * Features are keyed by a checksum of their content, so a feature is parsed again only after it has changed.
+ * The checksum of a feature file is remembered by path, along with the file's modification time and size, so
+ * an unchanged file does not have to be read. The least recently used features and files are evicted once the
+ * cache holds more than {@code cucumber.feature.cache} (a system property, default 1000) of them.
+ */
+class FeatureCache {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int DIGEST_BUFFER_SIZE = 8192;
+    // File systems may keep modification times in whole seconds, see FileCache
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+    private static final FeatureCache INSTANCE = new FeatureCache(Integer.getInteger("cucumber.feature.cache", 1000));
+
+    private final Map<String, ParsedFeature> features;
+    private final Map<File, FileChecksum> files;
+
+    FeatureCache(int maxSize) {
+        this.features = new LeastRecentlyUsed<>(maxSize);
+        this.files = new LeastRecentlyUsed<>(maxSize);
+    }
+
+    public static FeatureCache getInstance() {
+        return INSTANCE;
+    }
+
+    public ParsedFeature get(String content) {
+        return get(checksum(content), content);
+    }
+
+    /**
+     * Parsed feature of a feature file. The file is only read when its modification time or size changed,
+     * its content is only parsed when that changed.
+     */
+    public ParsedFeature get(File path) throws IOException {
+        File key = path.getAbsoluteFile();
+        long lastModified = key.lastModified();
+        long length = key.length();
+        FileChecksum file;
+        synchronized (features) {
+            file = files.get(key);
+        }
+        if (file != null && file.lastModified == lastModified && file.length == length
+                && file.cached >= lastModified + MODIFICATION_TIME_RESOLUTION) {
+            ParsedFeature feature;
+            synchronized (features) {
+                feature = features.get(file.checksum);
+            }
+            if (feature != null) {
+                return feature;
+            }
+        }
+        long cached = System.currentTimeMillis();
+        String content = FeatureFile.read(key);
+        String checksum = checksum(content);
+        synchronized (features) {
+            files.put(key, new FileChecksum(lastModified, length, cached, checksum));
+        }
+        return get(checksum, content);
+    }
+
+    private ParsedFeature get(String key, String content) {
+        ParsedFeature feature;
+        synchronized (features) {
+            feature = features.get(key);
+        }
+        if (feature == null) {
+            feature = ParsedFeature.parse(content);
+            synchronized (features) {
+                features.put(key, feature);
+            }
+        }
+        return feature;
+    }
+
+    static String checksum(String content) {
+        try {
+            byte[] digest = digest(content);
+            StringBuilder checksum = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                checksum.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return checksum.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    // Encode the content in chunks, rather than copying all of it into a byte array
+    private static byte[] digest(String content) throws NoSuchAlgorithmException {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+        CharsetEncoder encoder = UTF8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.wrap(content);
+        ByteBuffer bytes = ByteBuffer.allocate(DIGEST_BUFFER_SIZE);
+        while (encoder.encode(chars, bytes, true).isOverflow()) {
+            update(messageDigest, bytes);
+        }
+        while (encoder.flush(bytes).isOverflow()) {
+            update(messageDigest, bytes);
+        }
+        update(messageDigest, bytes);
+        return messageDigest.digest();
+    }
+
+    private static void update(MessageDigest messageDigest, ByteBuffer bytes) {
+        bytes.flip();
+        messageDigest.update(bytes);
+        bytes.clear();
+    }
+
+    private static class FileChecksum {
+        final long lastModified;
+        final long length;
+        // When the file was read
+        final long cached;
+        final String checksum;
+
+        FileChecksum(long lastModified, long length, long cached, String checksum) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.cached = cached;
+            this.checksum = checksum;
+        }
+    }
+
+    private static class LeastRecentlyUsed<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        LeastRecentlyUsed(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
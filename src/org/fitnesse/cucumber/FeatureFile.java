@@ -0,0 +1,52 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads feature files as UTF-8, through the shared content cache.
+ */
+class FeatureFile {
+    // Files from this size on are memory-mapped instead of copied into a heap buffer
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private FeatureFile() {
+    }
+
+    public static String read(File path) throws IOException {
+        long lastModified = path.lastModified();
+        long length = path.length();
+        String content = FileCache.content().get(path, lastModified, length);
+        if (content == null) {
+            content = decode(path);
+            FileCache.content().put(path, lastModified, length, content);
+        }
+        return content;
+    }
+
+    private static String decode(File path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer;
+            if (size >= MAP_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // keep reading
+                }
+                buffer.flip();
+            }
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(buffer)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Text derived from files, keyed by file: the content of feature files and the rendered HTML of feature pages.
+ * <p>
+ * An entry is only valid for the modification time and size the file had when it was read. File systems may keep
+ * modification times in whole seconds, so an edit within the same second that keeps the size goes unnoticed: text
+ * read less than two seconds after the file was modified is not served from the cache.
+ * The least recently used entries are evicted once a cache holds more than its budget. The budgets are set
+ * by the system properties {@code cucumber.content.cache} and {@code cucumber.html.cache} (in bytes, default 16MB).
+ */
+class FileCache {
+    private static final FileCache CONTENT = new FileCache(Long.getLong("cucumber.content.cache", 16 * 1024 * 1024));
+    private static final FileCache HTML = new FileCache(Long.getLong("cucumber.html.cache", 16 * 1024 * 1024));
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+    private final long maxBytes;
+    private final Map<File, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    FileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static FileCache content() {
+        return CONTENT;
+    }
+
+    public static FileCache html() {
+        return HTML;
+    }
+
+    public synchronized String get(File path, long lastModified, long length) {
+        Entry entry = entries.get(path.getAbsoluteFile());
+        if (entry == null) {
+            return null;
+        }
+        if (entry.lastModified != lastModified || entry.length != length
+                || entry.cached < lastModified + MODIFICATION_TIME_RESOLUTION) {
+            remove(path);
+            return null;
+        }
+        return entry.text;
+    }
+
+    public synchronized void put(File path, long lastModified, long length, String text) {
+        remove(path);
+        long size = sizeOf(text);
+        if (size > maxBytes) {
+            return;
+        }
+        entries.put(path.getAbsoluteFile(), new Entry(lastModified, length, System.currentTimeMillis(), text));
+        bytes += size;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= sizeOf(eldest.next().text);
+            eldest.remove();
+        }
+    }
+
+    private void remove(File path) {
+        Entry entry = entries.remove(path.getAbsoluteFile());
+        if (entry != null) {
+            bytes -= sizeOf(entry.text);
+        }
+    }
+
+    private static long sizeOf(String text) {
+        return 2L * text.length();
+    }
+
+    private static class Entry {
+        final long lastModified;
+        final long length;
+        // When the entry was added, after the file was read
+        final long cached;
+        final String text;
+
+        Entry(long lastModified, long length, long cached, String text) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.cached = cached;
+            this.text = text;
+        }
+    }
+}
@@ -6,15 +6,26 @@ import fitnesse.util.StringUtils;
 import gherkin.formatter.Formatter;
 import gherkin.formatter.model.*;
 
-import static fitnesse.html.HtmlUtil.escapeHTML;
-import static java.lang.String.format;
+import static org.fitnesse.cucumber.Html.escape;
 
 class FitNessePageFormatter implements Formatter {
+    /** Rows of an examples table shown on the wiki page, the other rows are collapsed below it. */
+    static final int EXAMPLE_ROWS = 100;
 
     private final Printer outputPrinter;
+    private final int exampleRows;
+    private final StringBuilder html = new StringBuilder(256);
 
     public FitNessePageFormatter(Printer outputPrinter) {
+        this(outputPrinter, EXAMPLE_ROWS);
+    }
+
+    /**
+     * @param exampleRows rows of an examples table that are shown, the rest are collapsed
+     */
+    public FitNessePageFormatter(Printer outputPrinter, int exampleRows) {
         this.outputPrinter = outputPrinter;
+        this.exampleRows = exampleRows;
     }
 
     @Override
@@ -28,7 +39,9 @@ class FitNessePageFormatter implements Formatter {
 
     @Override
     public void syntaxError(final String state, final String event, final List<String> legalEvents, final String uri, final Integer line) {
-        write("syntaxError " + escapeHTML(state) + " " + escapeHTML(event) + "<br/>");
+        escape(html.append("syntaxError "), state).append(' ');
+        escape(html, event).append("<br/>");
+        emit();
     }
 
     @Override
@@ -48,15 +61,28 @@ class FitNessePageFormatter implements Formatter {
 
     @Override
     public void examples(final Examples examples) {
-        write("<h4>Examples</h4><table>");
-        for (ExamplesTableRow row : examples.getRows()) {
-            write("<tr>");
+        html.append("<h4>Examples</h4><table>");
+        List<ExamplesTableRow> rows = examples.getRows();
+        int shown = Math.min(rows.size(), exampleRows + 1);
+        writeRows(rows.subList(0, shown));
+        html.append("</table>");
+        if (shown < rows.size()) {
+            html.append("<details><summary>").append(rows.size() - shown).append(" more rows</summary><table>");
+            writeRows(rows.subList(0, 1));
+            writeRows(rows.subList(shown, rows.size()));
+            html.append("</table></details>");
+        }
+        emit();
+    }
+
+    private void writeRows(List<ExamplesTableRow> rows) {
+        for (ExamplesTableRow row : rows) {
+            html.append("<tr>");
             for (String cell : row.getCells()) {
-                write("<td>" + escapeHTML(cell) + "</td>");
+                escape(html.append("<td>"), cell).append("</td>");
             }
-            write("</tr>");
+            html.append("</tr>");
         }
-        write("</table>");
     }
 
     @Override
@@ -66,7 +92,9 @@ class FitNessePageFormatter implements Formatter {
 
     @Override
     public void step(final Step step) {
-        write(format("%s%s<br/>", escapeHTML(step.getKeyword()), escapeHTML(step.getName())));
+        escape(html, step.getKeyword());
+        escape(html, step.getName()).append("<br/>");
+        emit();
     }
 
     @Override
@@ -85,14 +113,17 @@ class FitNessePageFormatter implements Formatter {
     public void eof() {
     }
 
-    private void write(final String text) {
-        outputPrinter.write(text);
+    private void emit() {
+        outputPrinter.write(html.toString());
+        html.setLength(0);
     }
 
     private void write(String tag, DescribedStatement statement) {
-        write("<" + tag + ">" + statement.getKeyword()+ ": " + escapeHTML(statement.getName()) + "</" + tag + ">");
+        html.append('<').append(tag).append('>').append(statement.getKeyword()).append(": ");
+        escape(html, statement.getName()).append("</").append(tag).append('>');
         if (!StringUtils.isBlank(statement.getDescription())) {
-            write("<p style='white-space: pre-line'>" + escapeHTML(statement.getDescription()) + "</p>");
+            escape(html.append("<p style='white-space: pre-line'>"), statement.getDescription()).append("</p>");
         }
+        emit();
     }
 }
@@ -1,7 +1,12 @@
 package org.fitnesse.cucumber;
 
 import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 
 import fitnesse.testsystems.ExecutionResult;
@@ -11,8 +16,9 @@ import gherkin.formatter.Formatter;
 import gherkin.formatter.Reporter;
 import gherkin.formatter.model.*;
 
-import static fitnesse.html.HtmlUtil.escapeHTML;
-import static java.lang.String.format;
+import static org.fitnesse.cucumber.Html.cssClass;
+import static org.fitnesse.cucumber.Html.duration;
+import static org.fitnesse.cucumber.Html.escape;
 
 class FitNesseResultFormatter implements Formatter, Reporter {
 
@@ -21,11 +27,26 @@ class FitNesseResultFormatter implements Formatter, Reporter {
 
     private Queue<Step> currentSteps = new ArrayDeque<>();
     private List<String> exampleHeaders;
-    private Queue<ExamplesTableRow> examples = new ArrayDeque<>();
+    // Rows of the examples being run, taken one by one as their scenarios come in
+    private Iterator<ExamplesTableRow> examples = Collections.emptyIterator();
 
     private final TestSummary testSummary;
     private String examplesKeyword;
 
+    private ExecutionResult scenarioResult;
+    private TestSummary scenarioCounts;
+    private final Map<Integer, ScenarioHistory.Outcome> outcomes = new LinkedHashMap<>();
+
+    // Durations in nanoseconds, as reported by Cucumber
+    private long scenarioDuration;
+    private long featureDuration;
+
+    // Where embedded attachments are kept, null to leave them out
+    private EmbeddingStore embeddings;
+
+    // HTML is put together here and handed to the output printer in one go
+    private final StringBuilder html = new StringBuilder(256);
+
 
     public FitNesseResultFormatter(final TestSummary testSummary, Printer outputPrinter, Printer errorPrinter) {
         this.outputPrinter = outputPrinter;
@@ -44,7 +65,9 @@ class FitNesseResultFormatter implements Formatter, Reporter {
 
     @Override
     public void syntaxError(final String state, final String event, final List<String> legalEvents, final String uri, final Integer line) {
-        write("syntaxError " + escapeHTML(state) + " " + escapeHTML(event) + "<br/>");
+        escape(html.append("syntaxError "), state).append(' ');
+        escape(html, event).append("<br/>");
+        emit();
     }
 
     @Override
@@ -59,36 +82,52 @@ class FitNesseResultFormatter implements Formatter, Reporter {
 
     @Override
     public void scenario(final Scenario scenario) {
-        if (examples.isEmpty()) {
+        if (!examples.hasNext()) {
             write("h4", scenario);
         } else {
-            final ExamplesTableRow values = examples.poll();
-            write("<h5>" + escapeHTML(examplesKeyword) + ": ");
+            final ExamplesTableRow values = examples.next();
+            escape(html.append("<h5>"), examplesKeyword).append(": ");
             for (int i = 0; i < exampleHeaders.size(); i++) {
-                if (i > 0) write(", ");
-                write(escapeHTML(exampleHeaders.get(i)) + " = " + escapeHTML(values.getCells().get(i)));
+                if (i > 0) html.append(", ");
+                escape(html, exampleHeaders.get(i)).append(" = ");
+                escape(html, values.getCells().get(i));
             }
-            write("</h5>");
+            html.append("</h5>");
+            emit();
         }
     }
 
     private void write(String tag, DescribedStatement statement) {
-        write("<" + tag + ">" + statement.getKeyword()+ ": " + statement.getName() + "</" + tag + ">");
+        html.append('<').append(tag).append('>').append(statement.getKeyword()).append(": ").append(statement.getName())
+                .append("</").append(tag).append('>');
         if (!StringUtils.isBlank(statement.getDescription())) {
-            write("<p style='white-space: pre-line'>" + escapeHTML(statement.getDescription()) + "</p>");
+            escape(html.append("<p style='white-space: pre-line'>"), statement.getDescription()).append("</p>");
         }
+        emit();
     }
 
     @Override
     public void examples(final Examples examples) {
         examplesKeyword = examples.getKeyword();
-        this.examples.addAll(examples.getRows());
-        this.exampleHeaders = this.examples.poll().getCells();
+        this.examples = examples.getRows().iterator();
+        this.exampleHeaders = this.examples.next().getCells();
+    }
+
+    /**
+     * Prepare the formatter for running a single example of a scenario outline, without the other rows.
+     */
+    void example(final String keyword, final List<String> headers, final ExamplesTableRow values) {
+        examplesKeyword = keyword;
+        exampleHeaders = headers;
+        examples = Collections.singletonList(values).iterator();
     }
 
     @Override
     public void startOfScenarioLifeCycle(final Scenario scenario) {
         currentSteps.clear();
+        scenarioDuration = 0;
+        scenarioResult = ExecutionResult.PASS;
+        scenarioCounts = new TestSummary();
     }
 
     @Override
@@ -98,6 +137,10 @@ class FitNesseResultFormatter implements Formatter, Reporter {
 
     @Override
     public void endOfScenarioLifeCycle(final Scenario scenario) {
+        outcomes.put(scenario.getLine(), new ScenarioHistory.Outcome(scenarioResult, scenario.getKeyword() + ": " + scenario.getName(), scenarioCounts));
+        writeDuration("Scenario", scenarioDuration);
+        featureDuration += scenarioDuration;
+        flush();
     }
 
     @Override
@@ -110,40 +153,51 @@ class FitNesseResultFormatter implements Formatter, Reporter {
 
     @Override
     public void eof() {
+        writeDuration("Feature", featureDuration);
+        featureDuration = 0;
         write("<br/><br/>");
+        flush();
     }
 
     @Override
     public void result(final Result result) {
         Step currentStep = currentSteps.poll();
         String status = result.getStatus();
+        addDuration(result);
+        CucumberMetrics.getInstance().stepCompleted(status, result.getDuration());
         if (Result.PASSED.equals(status)) {
-            processStep(currentStep, ExecutionResult.PASS);
+            processStep(currentStep, ExecutionResult.PASS, result.getDuration());
         } else if (Result.FAILED.equals(status)) {
-            processStep(currentStep, ExecutionResult.FAIL);
+            processStep(currentStep, ExecutionResult.FAIL, result.getDuration());
         } else if (Result.SKIPPED.getStatus().equals(status)) {
-            processStep(currentStep, ExecutionResult.IGNORE);
+            processStep(currentStep, ExecutionResult.IGNORE, result.getDuration());
         } else if (Result.UNDEFINED.getStatus().equals(status)) {
             processUndefinedStep(currentStep);
         } else {
-            processStep(currentStep, ExecutionResult.ERROR);
+            processStep(currentStep, ExecutionResult.ERROR, result.getDuration());
         }
     }
 
     @Override
     public void before(final Match match, final Result result) {
+        addDuration(result);
         if (result.getError() != null) {
-            testSummary.add(ExecutionResult.ERROR);
-            write("<span class='error'>Error before scenario: " + escapeHTML(result.getError().getMessage()) + ". See Execution Log for details.</span>");
+            count(ExecutionResult.ERROR);
+            escape(html.append("<span class='error'>Error before scenario: "), result.getError().getMessage())
+                    .append(". See Execution Log for details.</span>");
+            emit();
             errorPrinter.write(result.getErrorMessage());
         }
     }
 
     @Override
     public void after(final Match match, final Result result) {
+        addDuration(result);
         if (result.getError() != null) {
-            testSummary.add(ExecutionResult.ERROR);
-            write("<br/><span class='error'>Error after scenario: " + escapeHTML(result.getError().getMessage()) + ". See Execution Log for details.</span>");
+            count(ExecutionResult.ERROR);
+            escape(html.append("<br/><span class='error'>Error after scenario: "), result.getError().getMessage())
+                    .append(". See Execution Log for details.</span>");
+            emit();
             errorPrinter.write(result.getErrorMessage());
         }
     }
@@ -154,6 +208,19 @@ class FitNesseResultFormatter implements Formatter, Reporter {
 
     @Override
     public void embedding(final String mimeType, final byte[] data) {
+        if (embeddings == null) {
+            return;
+        }
+        String url = embeddings.store(mimeType, data, errorPrinter);
+        escape(html.append("<a href='"), url).append("' target='_blank'>");
+        if (EmbeddingStore.isImage(mimeType)) {
+            escape(html.append("<img src='"), url).append("' loading='lazy' style='max-width: 200px; max-height: 150px' alt='");
+            escape(html, mimeType).append("'/>");
+        } else {
+            escape(html, mimeType).append(", ").append(data.length).append(" bytes");
+        }
+        html.append("</a><br/>");
+        emit();
     }
 
     @Override
@@ -161,22 +228,147 @@ class FitNesseResultFormatter implements Formatter, Reporter {
         outputPrinter.write(text);
     }
 
+    private void emit() {
+        if (outputPrinter instanceof BufferedPrinter) {
+            ((BufferedPrinter) outputPrinter).append(html);
+        } else {
+            outputPrinter.write(html.toString());
+        }
+        html.setLength(0);
+    }
+
+    EmbeddingStore getEmbeddings() {
+        return embeddings;
+    }
+
+    /**
+     * Keep embedded attachments in a store, and link to them.
+     */
+    void setEmbeddings(EmbeddingStore embeddings) {
+        this.embeddings = embeddings;
+    }
+
+    /**
+     * Pass on buffered output, if the output printer is buffered.
+     */
+    void flush() {
+        if (outputPrinter instanceof BufferedPrinter) {
+            ((BufferedPrinter) outputPrinter).flush();
+        }
+    }
+
+    /**
+     * Total duration of the scenarios formatted since the last feature, in nanoseconds.
+     */
+    long getFeatureDuration() {
+        return featureDuration;
+    }
+
+    /**
+     * Account for scenarios that have been formatted by another formatter, e.g. when run in parallel.
+     */
+    void addFeatureDuration(long duration) {
+        featureDuration += duration;
+    }
+
+    /**
+     * Outcome of every scenario formatted so far, by line (for an example: the line of its row).
+     */
+    Map<Integer, ScenarioHistory.Outcome> getOutcomes() {
+        return outcomes;
+    }
+
+    /**
+     * Account for scenarios that have been formatted by another formatter, e.g. when run in parallel.
+     */
+    void addOutcomes(Map<Integer, ScenarioHistory.Outcome> outcomes) {
+        this.outcomes.putAll(outcomes);
+    }
+
+    /**
+     * Results of scenarios that were not run again, their steps count as they did in the previous run.
+     */
+    void previous(final Collection<ScenarioHistory.Outcome> scenarios) {
+        if (!scenarios.isEmpty()) {
+            write("<h4>Results of the previous run</h4>");
+            for (ScenarioHistory.Outcome scenario : scenarios) {
+                testSummary.add(scenario.counts);
+                escape(html.append("<span class='").append(cssClass(scenario.result)).append("'>"), scenario.name).append("</span><br/>");
+                emit();
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Scenarios that were not run because of a tag or name filter, they count as ignored.
+     */
+    void excluded(final Collection<String> scenarios) {
+        if (!scenarios.isEmpty()) {
+            write("<h4>Excluded scenarios</h4>");
+            for (String scenario : scenarios) {
+                testSummary.add(ExecutionResult.IGNORE);
+                escape(html.append("<span class='ignore'>"), scenario).append("</span><br/>");
+                emit();
+            }
+            flush();
+        }
+    }
+
     public void missing(final List<String> snippets) {
         if (!snippets.isEmpty()) {
             write("<h3>Pending methods</h3>");
             for (String snippet : snippets) {
-                write(format("<pre>%s</pre>", escapeHTML(snippet)));
+                escape(html.append("<pre>"), snippet).append("</pre>");
+                emit();
             }
         }
     }
 
-    private void processStep(Step step, ExecutionResult result) {
+    private void processStep(Step step, ExecutionResult result, Long duration) {
+        count(result);
+        if (duration != null) {
+            duration(html.append("<span title='"), duration).append("'>");
+        }
+        html.append("<span class='").append(cssClass(result)).append("'>");
+        escape(html, step.getKeyword());
+        escape(html, step.getName()).append("</span>");
+        if (duration != null) {
+            html.append("</span>");
+        }
+        html.append("<br/>");
+        emit();
+    }
+
+    // Count a step or hook for the page and the scenario. ExecutionResult is ordered from worst (ERROR) to best (PASS)
+    private void count(ExecutionResult result) {
         testSummary.add(result);
-        write(format("<span class='%s'>%s%s</span><br/>", result.name().toLowerCase(), escapeHTML(step.getKeyword()), escapeHTML(step.getName())));
+        if (scenarioCounts != null) {
+            scenarioCounts.add(result);
+        }
+        if (scenarioResult == null || result.ordinal() < scenarioResult.ordinal()) {
+            scenarioResult = result;
+        }
+    }
+
+    private void addDuration(Result result) {
+        if (result.getDuration() != null) {
+            scenarioDuration += result.getDuration();
+        }
+    }
+
+    private void writeDuration(String statement, long duration) {
+        if (duration > 0) {
+            html.append("<span class='duration' style='color: gray; font-size: smaller'>").append(statement).append(" took ");
+            duration(html, duration).append("</span><br/>");
+            emit();
+        }
     }
 
     private void processUndefinedStep(final Step step) {
-        testSummary.add(ExecutionResult.ERROR);
-        write(format("<span class='error'>Undefined step: %s%s</span><br/>", escapeHTML(step.getKeyword()), escapeHTML(step.getName())));
+        count(ExecutionResult.ERROR);
+        escape(html.append("<span class='error'>Undefined step: "), step.getKeyword());
+        escape(html, step.getName()).append("</span><br/>");
+        emit();
     }
 }
@@ -0,0 +1,163 @@
+package org.fitnesse.cucumber;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import fitnesse.testsystems.CompositeTestSystemListener;
+import fitnesse.testsystems.ExecutionLogListener;
+import fitnesse.testsystems.ExecutionResult;
+import fitnesse.testsystems.TestPage;
+import fitnesse.testsystems.TestSummary;
+import fitnesse.testsystems.TestSystem;
+import fitnesse.testsystems.TestSystemListener;
+
+/**
+ * Cucumber test system that runs its pages in worker JVMs, rather than in the FitNesse JVM.
+ * <p>
+ * Each worker runs one page at a time; with more than one worker, pages run at the same time and
+ * {@link #runTests(TestPage)} returns before the page is executed. Results are still reported page by page.
+ * <p>
+ * Workers time out pages themselves. In case a worker hangs where it can not, e.g. in a static initializer or
+ * collecting garbage near its heap limit, it is stopped once the page timeout and a grace period have passed.
+ */
+class ForkedCucumberTestSystem implements TestSystem {
+    private static final long TIMEOUT_GRACE = TimeUnit.SECONDS.toMillis(30);
+    private final String name;
+    private final ExecutionLogListener executionLogListener;
+    private final WorkerPool workerPool;
+    private final List<String> classPath;
+    private final List<String> jvmArgs;
+    private final int workers;
+    private final int maxPages;
+    private final long maxHeap;
+    private final CompositeTestSystemListener testSystemListener;
+    private final OrderedTestSystemListener orderedTestSystemListener;
+
+    private final Set<WorkerPool.Worker> busyWorkers = new HashSet<>();
+
+    private volatile boolean started = false;
+    private ExecutorService pageExecutor;
+
+    /**
+     * @param maxPages number of pages after which a worker is replaced, 0 for no limit
+     * @param maxHeap  retained heap in bytes after which a worker is replaced, 0 for no limit
+     */
+    public ForkedCucumberTestSystem(String name, ExecutionLogListener executionLogListener, WorkerPool workerPool,
+                                    List<String> classPath, List<String> jvmArgs, int workers, int maxPages, long maxHeap) {
+        this.name = name;
+        this.executionLogListener = executionLogListener;
+        this.workerPool = workerPool;
+        this.classPath = classPath;
+        this.jvmArgs = jvmArgs;
+        this.workers = workers;
+        this.maxPages = maxPages;
+        this.maxHeap = maxHeap;
+        this.testSystemListener = new CompositeTestSystemListener();
+        this.orderedTestSystemListener = new OrderedTestSystemListener(testSystemListener);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void start() {
+        pageExecutor = Executors.newFixedThreadPool(workers, new CucumberThreadFactory("cucumber-fork", null));
+
+        started = true;
+
+        testSystemListener.testSystemStarted(this);
+    }
+
+    @Override
+    public void bye() {
+        pageExecutor.shutdown();
+        try {
+            pageExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        kill();
+    }
+
+    @Override
+    public void kill() {
+        if (pageExecutor != null) {
+            pageExecutor.shutdownNow();
+        }
+        synchronized (busyWorkers) {
+            for (WorkerPool.Worker worker : busyWorkers) {
+                worker.stop();
+            }
+        }
+        testSystemListener.testSystemStopped(this, null);
+    }
+
+    @Override
+    public void runTests(final TestPage testPage) {
+        final TestSystemListener pageListener = orderedTestSystemListener.nextPage();
+        pageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runTests(testPage, pageListener);
+                } catch (RuntimeException e) {
+                    executionLogListener.exceptionOccurred(e);
+                }
+            }
+        });
+    }
+
+    private void runTests(TestPage testPage, TestSystemListener listener) {
+        TestSummary testSummary = new TestSummary();
+        listener.testStarted(testPage);
+        String pageName = testPage.getFullPath();
+        long start = System.nanoTime();
+        CucumberMetrics.getInstance().pageStarted(pageName);
+
+        long pageTimeout = TimeUnit.SECONDS.toMillis(CucumberTestSystem.intValue(
+                CucumberTestSystem.variable(testPage, CucumberTestSystem.PAGE_TIMEOUT), 0));
+        WorkerPool.Worker worker = null;
+        try {
+            worker = workerPool.acquire(classPath, jvmArgs, maxPages, maxHeap);
+            synchronized (busyWorkers) {
+                busyWorkers.add(worker);
+            }
+            try {
+                testSummary = worker.run(testPage, listener, executionLogListener, pageTimeout > 0 ? pageTimeout + TIMEOUT_GRACE : 0);
+            } finally {
+                synchronized (busyWorkers) {
+                    busyWorkers.remove(worker);
+                }
+            }
+            workerPool.release(worker);
+        } catch (IOException e) {
+            if (worker != null) {
+                worker.stop();
+            }
+            testSummary.add(ExecutionResult.ERROR);
+            listener.testOutputChunk("<span class='error'>Test execution failed: "
+                    + (e instanceof EOFException ? "worker JVM stopped" : e.getMessage()) + "</span>");
+        } finally {
+            CucumberMetrics.getInstance().pageCompleted(pageName, System.nanoTime() - start);
+            listener.testComplete(testPage, testSummary);
+        }
+    }
+
+    @Override
+    public boolean isSuccessfullyStarted() {
+        return started;
+    }
+
+    @Override
+    public void addTestSystemListener(TestSystemListener listener) {
+        testSystemListener.addTestSystemListener(listener);
+    }
+}
@@ -0,0 +1,99 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cucumber.api.java.After;
+import cucumber.api.java.Before;
+import cucumber.api.java8.GlueBase;
+import cucumber.runtime.java.StepDefAnnotation;
+import util.FileUtil;
+
+/**
+ * Writes a glue index for a directory of compiled classes, to be run as part of a build:
+ * <pre>java org.fitnesse.cucumber.GlueIndexer classes-dir [classpath-element ...]</pre>
+ * The index lists the classes that contain step definitions or hooks. When it is on the class path,
+ * the test system looks glue classes up in the index, instead of scanning the class path.
+ */
+public class GlueIndexer {
+    public static final String INDEX_LOCATION = "META-INF/cucumber-glue.index";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java " + GlueIndexer.class.getName() + " classes-dir [classpath-element ...]");
+            System.exit(1);
+        }
+        File classesDir = new File(args[0]);
+        URL[] urls = new URL[args.length];
+        for (int i = 0; i < args.length; i++) {
+            urls[i] = new File(args[i]).toURI().toURL();
+        }
+        try (URLClassLoader classLoader = new URLClassLoader(urls, GlueIndexer.class.getClassLoader())) {
+            List<String> glueClasses = findGlueClasses(classesDir, classLoader);
+            File index = new File(classesDir, INDEX_LOCATION);
+            index.getParentFile().mkdirs();
+            StringBuilder content = new StringBuilder("# Generated by ").append(GlueIndexer.class.getName()).append('\n');
+            for (String glueClass : glueClasses) {
+                content.append(glueClass).append('\n');
+            }
+            FileUtil.createFile(index, content.toString());
+            System.out.println("Indexed " + glueClasses.size() + " glue classes in " + index);
+        }
+    }
+
+    static List<String> findGlueClasses(File classesDir, ClassLoader classLoader) {
+        List<String> glueClasses = new ArrayList<>();
+        collectGlueClasses(classesDir, "", classLoader, glueClasses);
+        Collections.sort(glueClasses);
+        return glueClasses;
+    }
+
+    private static void collectGlueClasses(File dir, String packagePrefix, ClassLoader classLoader, List<String> glueClasses) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                collectGlueClasses(file, packagePrefix + name + ".", classLoader, glueClasses);
+            } else if (name.endsWith(".class")) {
+                String className = packagePrefix + name.substring(0, name.length() - ".class".length());
+                if (isGlue(className, classLoader)) {
+                    glueClasses.add(className);
+                }
+            }
+        }
+    }
+
+    private static boolean isGlue(String className, ClassLoader classLoader) {
+        try {
+            return isGlue(Class.forName(className, false, classLoader));
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    static boolean isGlue(Class<?> glueClass) {
+        if (GlueBase.class.isAssignableFrom(glueClass) && !glueClass.isInterface()) {
+            return true;
+        }
+        for (Method method : glueClass.getDeclaredMethods()) {
+            for (Annotation annotation : method.getAnnotations()) {
+                Class<? extends Annotation> annotationType = annotation.annotationType();
+                if (annotationType.isAnnotationPresent(StepDefAnnotation.class)
+                        || annotationType.equals(Before.class) || annotationType.equals(After.class)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,54 @@
+package org.fitnesse.cucumber;
+
+import fitnesse.testsystems.ExecutionResult;
+
+/**
+ * Appends HTML fragments to a buffer, without intermediate strings. Escapes the same characters as
+ * {@link fitnesse.html.HtmlUtil#escapeHTML(String)}.
+ */
+final class Html {
+    private static final String[] RESULT_CLASSES = new String[ExecutionResult.values().length];
+
+    static {
+        for (ExecutionResult result : ExecutionResult.values()) {
+            RESULT_CLASSES[result.ordinal()] = result.name().toLowerCase();
+        }
+    }
+
+    private Html() {
+    }
+
+    public static StringBuilder escape(StringBuilder html, String text) {
+        if (text == null) {
+            return html;
+        }
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String entity;
+            switch (text.charAt(i)) {
+                case '&': entity = "&amp;"; break;
+                case '<': entity = "&lt;"; break;
+                case '>': entity = "&gt;"; break;
+                default: continue;
+            }
+            html.append(text, start, i).append(entity);
+            start = i + 1;
+        }
+        return html.append(text, start, text.length());
+    }
+
+    /**
+     * A duration in milliseconds, with one decimal: {@code 12.3 ms}.
+     */
+    public static StringBuilder duration(StringBuilder html, long nanos) {
+        long tenths = (nanos + 50000) / 100000;
+        return html.append(tenths / 10).append('.').append(tenths % 10).append(" ms");
+    }
+
+    /**
+     * CSS class FitNesse uses for a result.
+     */
+    public static String cssClass(ExecutionResult result) {
+        return RESULT_CLASSES[result.ordinal()];
+    }
+}
@@ -0,0 +1,220 @@
+package org.fitnesse.cucumber;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cucumber.runtime.CucumberException;
+import cucumber.runtime.io.Resource;
+import cucumber.runtime.io.ResourceIteratorFactory;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.io.ZipThenFileResourceIteratorFactory;
+
+/**
+ * Finds glue classes in the glue index ({@value GlueIndexer#INDEX_LOCATION}) files on the class path,
+ * instead of walking directories and jar files.
+ * <p>
+ * Each class path element (directory or jar) with an index is looked up in its own index, elements without one are
+ * scanned as before. An index in a directory is only used while no class file in that directory is newer than
+ * the index, so glue compiled after the index was written is still found. Packages that are in no index at all,
+ * such as the Cucumber backends, are left to the scanning resource loader.
+ */
+class IndexedResourceLoader implements ResourceLoader {
+    private static final String CLASSPATH_SCHEME = "classpath:";
+    private static final String CLASS_EXTENSION = ".class";
+
+    private final ResourceLoader resourceLoader;
+    private final ClassLoader classLoader;
+    // Indexed classes by the URL of the class path element they are in, for current indexes only
+    private final Map<String, List<String>> indexes;
+    private final ResourceIteratorFactory scanner = new ZipThenFileResourceIteratorFactory();
+
+    public IndexedResourceLoader(ResourceLoader resourceLoader, ClassLoader classLoader) {
+        this(resourceLoader, classLoader, readIndexes(classLoader));
+    }
+
+    IndexedResourceLoader(ResourceLoader resourceLoader, ClassLoader classLoader, Map<String, List<String>> indexes) {
+        this.resourceLoader = resourceLoader;
+        this.classLoader = classLoader;
+        this.indexes = indexes;
+    }
+
+    @Override
+    public Iterable<Resource> resources(String path, String suffix) {
+        if (CLASS_EXTENSION.equals(suffix) && path.startsWith(CLASSPATH_SCHEME) && !indexes.isEmpty()) {
+            List<Resource> resources = indexedResources(path.substring(CLASSPATH_SCHEME.length()), suffix);
+            if (resources != null) {
+                return resources;
+            }
+        }
+        return resourceLoader.resources(path, suffix);
+    }
+
+    /**
+     * Classes of a package, from the index of the class path elements that have one, and by scanning the others.
+     * Null if none of the elements that have the package is indexed.
+     */
+    private List<Resource> indexedResources(String packagePath, String suffix) {
+        packagePath = packagePath.replaceAll("^/+|/+$", "");
+        String prefix = packagePath.isEmpty() ? "" : packagePath.replace('/', '.') + ".";
+        List<Resource> resources = new ArrayList<>();
+        boolean indexed = false;
+        Set<String> roots = new HashSet<>();
+        try {
+            Enumeration<URL> urls = classLoader.getResources(packagePath);
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                String root = root(url.toExternalForm(), packagePath);
+                roots.add(root);
+                if (indexes.containsKey(root)) {
+                    indexed = true;
+                    addIndexed(indexes.get(root), prefix, resources);
+                } else {
+                    Iterator<Resource> scanned = scanner.createIterator(url, packagePath, suffix);
+                    while (scanned.hasNext()) {
+                        resources.add(scanned.next());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new CucumberException("Unable to look up glue in " + packagePath, e);
+        }
+        // Jars without directory entries do not show up as having the package, their index still does
+        for (Map.Entry<String, List<String>> index : indexes.entrySet()) {
+            if (!roots.contains(index.getKey())) {
+                indexed |= addIndexed(index.getValue(), prefix, resources);
+            }
+        }
+        return indexed ? resources : null;
+    }
+
+    private boolean addIndexed(List<String> classNames, String prefix, List<Resource> resources) {
+        boolean added = false;
+        for (String className : classNames) {
+            if (className.startsWith(prefix)) {
+                resources.add(new IndexedClassResource(className));
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * The class path element a resource was found in, as URL ending in a slash.
+     */
+    static String root(String url, String path) {
+        String root = url.replaceAll("/+$", "");
+        if (!path.isEmpty() && root.endsWith(path)) {
+            root = root.substring(0, root.length() - path.length());
+        }
+        return root.endsWith("/") ? root : root + "/";
+    }
+
+    static Map<String, List<String>> readIndexes(ClassLoader classLoader) {
+        Map<String, List<String>> indexes = new HashMap<>();
+        try {
+            Enumeration<URL> urls = classLoader.getResources(GlueIndexer.INDEX_LOCATION);
+            while (urls.hasMoreElements()) {
+                URL index = urls.nextElement();
+                if (isCurrent(index)) {
+                    List<String> classNames = new ArrayList<>();
+                    readIndex(index, classNames);
+                    indexes.put(root(index.toExternalForm(), GlueIndexer.INDEX_LOCATION), classNames);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read glue index", e);
+        }
+        return indexes;
+    }
+
+    /**
+     * An index in a jar is written along with the jar. An index in a directory is current when no class file in the
+     * directory is newer.
+     */
+    private static boolean isCurrent(URL index) {
+        if (!"file".equals(index.getProtocol())) {
+            return true;
+        }
+        try {
+            File indexFile = new File(index.toURI());
+            File classesDir = indexFile.getParentFile().getParentFile();
+            return newestClass(classesDir) <= indexFile.lastModified();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static long newestClass(File dir) {
+        long newest = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    newest = Math.max(newest, newestClass(file));
+                } else if (file.getName().endsWith(CLASS_EXTENSION)) {
+                    newest = Math.max(newest, file.lastModified());
+                }
+            }
+        }
+        return newest;
+    }
+
+    private static void readIndex(URL index, List<String> classNames) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), Charset.forName("UTF-8")))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    classNames.add(line);
+                }
+            }
+        }
+    }
+
+    private class IndexedClassResource implements Resource {
+        private final String className;
+
+        IndexedClassResource(String className) {
+            this.className = className;
+        }
+
+        @Override
+        public String getPath() {
+            return className.replace('.', '/') + CLASS_EXTENSION;
+        }
+
+        @Override
+        public String getAbsolutePath() {
+            URL url = classLoader.getResource(getPath());
+            return url != null ? url.toExternalForm() : getPath();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            InputStream inputStream = classLoader.getResourceAsStream(getPath());
+            if (inputStream == null) {
+                throw new IOException("Indexed glue class not found: " + className);
+            }
+            return inputStream;
+        }
+
+        @Override
+        public String getClassName(String extension) {
+            return className;
+        }
+    }
+}
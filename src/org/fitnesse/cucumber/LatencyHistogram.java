@@ -0,0 +1,75 @@
+package org.fitnesse.cucumber;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations, with a bucket for every power of two microseconds.
+ */
+class LatencyHistogram {
+    private static final int BUCKETS = 48;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long currentMax;
+        do {
+            currentMax = max.get();
+        } while (nanos > currentMax && !max.compareAndSet(currentMax, nanos));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Sum of all recorded durations, in nanoseconds.
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    public CucumberMetricsMXBean.Latency summary() {
+        long n = count.get();
+        return new CucumberMetricsMXBean.Latency(n,
+                n == 0 ? 0 : total.get() / NANOS_PER_MILLI / n,
+                max.get() / NANOS_PER_MILLI,
+                percentile(0.50), percentile(0.95), percentile(0.99));
+    }
+
+    /**
+     * Upper bound, in milliseconds, of the bucket holding the given fraction of the recorded durations.
+     */
+    double percentile(double fraction) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold) {
+                return (1L << i) / 1000.0;
+            }
+        }
+        return max.get() / NANOS_PER_MILLI;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,141 @@
+package org.fitnesse.cucumber;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import fitnesse.testsystems.Assertion;
+import fitnesse.testsystems.ExceptionResult;
+import fitnesse.testsystems.TestPage;
+import fitnesse.testsystems.TestResult;
+import fitnesse.testsystems.TestSummary;
+import fitnesse.testsystems.TestSystem;
+import fitnesse.testsystems.TestSystemListener;
+
+/**
+ * Reports pages that are executed concurrently as if they ran one after another.
+ * <p>
+ * Every page obtains its own listener. Events of the oldest page still in flight are passed on
+ * directly, events of the other pages are held back until all pages before them are complete.
+ */
+class OrderedTestSystemListener {
+    private final TestSystemListener listener;
+    private final Deque<PageListener> pages = new ArrayDeque<>();
+
+    public OrderedTestSystemListener(TestSystemListener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized TestSystemListener nextPage() {
+        PageListener page = new PageListener();
+        pages.add(page);
+        return page;
+    }
+
+    private synchronized void fire(PageListener page, Event event, boolean pageComplete) {
+        if (pages.peek() != page) {
+            page.events.add(event);
+            page.complete |= pageComplete;
+            return;
+        }
+        event.fire(listener);
+        if (pageComplete) {
+            pages.poll();
+            flushCompletedPages();
+        }
+    }
+
+    private void flushCompletedPages() {
+        while (!pages.isEmpty()) {
+            PageListener page = pages.peek();
+            for (Event event : page.events) {
+                event.fire(listener);
+            }
+            page.events.clear();
+            if (!page.complete) {
+                return;
+            }
+            pages.poll();
+        }
+    }
+
+    private interface Event {
+        void fire(TestSystemListener listener);
+    }
+
+    private class PageListener implements TestSystemListener {
+        private final List<Event> events = new ArrayList<>();
+        private boolean complete;
+
+        @Override
+        public void testSystemStarted(final TestSystem testSystem) {
+            fire(this, new Event() {
+                @Override
+                public void fire(TestSystemListener listener) {
+                    listener.testSystemStarted(testSystem);
+                }
+            }, false);
+        }
+
+        @Override
+        public void testOutputChunk(final String output) {
+            fire(this, new Event() {
+                @Override
+                public void fire(TestSystemListener listener) {
+                    listener.testOutputChunk(output);
+                }
+            }, false);
+        }
+
+        @Override
+        public void testStarted(final TestPage testPage) {
+            fire(this, new Event() {
+                @Override
+                public void fire(TestSystemListener listener) {
+                    listener.testStarted(testPage);
+                }
+            }, false);
+        }
+
+        @Override
+        public void testComplete(final TestPage testPage, final TestSummary testSummary) {
+            fire(this, new Event() {
+                @Override
+                public void fire(TestSystemListener listener) {
+                    listener.testComplete(testPage, testSummary);
+                }
+            }, true);
+        }
+
+        @Override
+        public void testSystemStopped(final TestSystem testSystem, final Throwable cause) {
+            fire(this, new Event() {
+                @Override
+                public void fire(TestSystemListener listener) {
+                    listener.testSystemStopped(testSystem, cause);
+                }
+            }, false);
+        }
+
+        @Override
+        public void testAssertionVerified(final Assertion assertion, final TestResult testResult) {
+            fire(this, new Event() {
+                @Override
+                public void fire(TestSystemListener listener) {
+                    listener.testAssertionVerified(assertion, testResult);
+                }
+            }, false);
+        }
+
+        @Override
+        public void testExceptionOccurred(final Assertion assertion, final ExceptionResult exceptionResult) {
+            fire(this, new Event() {
+                @Override
+                public void fire(TestSystemListener listener) {
+                    listener.testExceptionOccurred(assertion, exceptionResult);
+                }
+            }, false);
+        }
+    }
+}
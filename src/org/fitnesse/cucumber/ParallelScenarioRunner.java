@@ -0,0 +1,348 @@
+package org.fitnesse.cucumber;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cucumber.runtime.CucumberException;
+import cucumber.runtime.Runtime;
+import cucumber.runtime.model.CucumberExamples;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberScenarioOutline;
+import cucumber.runtime.model.CucumberTagStatement;
+import fitnesse.testsystems.ExecutionResult;
+import fitnesse.testsystems.TestSummary;
+import gherkin.formatter.model.ExamplesTableRow;
+
+import static fitnesse.html.HtmlUtil.escapeHTML;
+import static java.lang.String.format;
+
+/**
+ * Runs the scenarios of a page, including every example of a scenario outline, on a bounded pool of worker threads.
+ * <p>
+ * Every scenario runs with its own runtime (and hence its own world) and writes into its own buffer. Headers
+ * and scenario output are written to the page formatter in document order, as soon as they are available.
+ * <p>
+ * A scenario that runs past the scenario timeout, or is not done when the page timeout expires, is reported
+ * as an error with the stack of its thread, and that thread is interrupted. The pool gets a new thread in its
+ * place, as a step that ignores the interrupt may never return.
+ */
+class ParallelScenarioRunner {
+    private static final ScheduledExecutorService WATCHDOG =
+            Executors.newSingleThreadScheduledExecutor(new CucumberThreadFactory("cucumber-watchdog", null));
+
+    private final RuntimeCache runtimeCache;
+    private final String gluePath;
+    private final ClassLoader classLoader;
+    private final int threads;
+    private final long scenarioTimeout;
+    private final long pageTimeout;
+    private final Printer errorPrinter;
+    private ThreadPoolExecutor executor;
+    private EmbeddingStore embeddings;
+
+    public ParallelScenarioRunner(RuntimeCache runtimeCache, String gluePath, ClassLoader classLoader, int threads, Printer errorPrinter) {
+        this(runtimeCache, gluePath, classLoader, threads, 0, 0, errorPrinter);
+    }
+
+    /**
+     * @param scenarioTimeout maximum run time of a single scenario in milliseconds, 0 for no limit
+     * @param pageTimeout     maximum run time of all scenarios together in milliseconds, 0 for no limit
+     */
+    public ParallelScenarioRunner(RuntimeCache runtimeCache, String gluePath, ClassLoader classLoader, int threads,
+                                  long scenarioTimeout, long pageTimeout, Printer errorPrinter) {
+        this.runtimeCache = runtimeCache;
+        this.gluePath = gluePath;
+        this.classLoader = classLoader;
+        this.threads = threads;
+        this.scenarioTimeout = scenarioTimeout;
+        this.pageTimeout = pageTimeout;
+        this.errorPrinter = errorPrinter;
+    }
+
+    public void run(List<CucumberFeature> cucumberFeatures, FitNesseResultFormatter formatter, TestSummary testSummary) {
+        long deadline = pageTimeout > 0 ? System.currentTimeMillis() + pageTimeout : Long.MAX_VALUE;
+        embeddings = formatter.getEmbeddings();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new CucumberThreadFactory("cucumber-scenario", classLoader));
+        try {
+            // Tasks are let go once written, so the output of examples that are done can be collected
+            Queue<ScenarioTask> pending = submitScenarios(cucumberFeatures);
+            Set<String> snippets = new LinkedHashSet<>();
+
+            for (CucumberFeature cucumberFeature : cucumberFeatures) {
+                formatter.uri(cucumberFeature.getPath());
+                formatter.feature(cucumberFeature.getGherkinFeature());
+                for (CucumberTagStatement statement : cucumberFeature.getFeatureElements()) {
+                    if (statement instanceof CucumberScenarioOutline) {
+                        CucumberScenarioOutline outline = (CucumberScenarioOutline) statement;
+                        outline.formatOutlineScenario(formatter);
+                        for (CucumberExamples cucumberExamples : outline.getCucumberExamplesList()) {
+                            for (int i = 1; i < cucumberExamples.getExamples().getRows().size(); i++) {
+                                write(pending.poll(), deadline, formatter, testSummary, snippets);
+                            }
+                        }
+                    } else {
+                        write(pending.poll(), deadline, formatter, testSummary, snippets);
+                    }
+                }
+                formatter.eof();
+            }
+
+            formatter.missing(new ArrayList<>(snippets));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Queue<ScenarioTask> submitScenarios(List<CucumberFeature> cucumberFeatures) {
+        Queue<ScenarioTask> tasks = new ArrayDeque<>();
+        for (CucumberFeature cucumberFeature : cucumberFeatures) {
+            for (CucumberTagStatement statement : cucumberFeature.getFeatureElements()) {
+                if (statement instanceof CucumberScenarioOutline) {
+                    for (CucumberExamples cucumberExamples : ((CucumberScenarioOutline) statement).getCucumberExamplesList()) {
+                        List<ExamplesTableRow> rows = cucumberExamples.getExamples().getRows();
+                        for (ExamplesTableRow row : rows.subList(1, rows.size())) {
+                            tasks.add(new ScenarioTask(statement, row.getLine(), cucumberExamples, row));
+                        }
+                    }
+                } else {
+                    tasks.add(new ScenarioTask(statement, statement.getGherkinModel().getLine(), null, null));
+                }
+            }
+        }
+        for (ScenarioTask task : tasks) {
+            executor.execute(task);
+        }
+        return tasks;
+    }
+
+    private void write(ScenarioTask task, long deadline, FitNesseResultFormatter formatter, TestSummary testSummary, Set<String> snippets) {
+        try {
+            if (!task.done.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                task.timeOut("Page timed out after " + pageTimeout + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CucumberException("Interrupted while waiting for scenario results", e);
+        }
+        ScenarioResult result = task.result;
+        if (result.failure instanceof CucumberException) {
+            throw (CucumberException) result.failure;
+        } else if (result.failure != null) {
+            throw new CucumberException(result.failure);
+        }
+        formatter.write(result.output);
+        formatter.flush();
+        if (result.errors.length() > 0) {
+            errorPrinter.write(result.errors);
+        }
+        formatter.addFeatureDuration(result.duration);
+        formatter.addOutcomes(result.outcomes);
+        testSummary.add(result.testSummary);
+        snippets.addAll(result.snippets);
+    }
+
+    // A thread stuck in a scenario that timed out is replaced, so the other scenarios keep their threads
+    private static void replaceWorker(ThreadPoolExecutor executor) {
+        synchronized (executor) {
+            if (!executor.isShutdown()) {
+                executor.setMaximumPoolSize(executor.getMaximumPoolSize() + 1);
+                executor.setCorePoolSize(executor.getCorePoolSize() + 1);
+            }
+        }
+    }
+
+    // Once the stuck thread comes back, the pool shrinks to its size again
+    private static void restoreWorker(ThreadPoolExecutor executor) {
+        synchronized (executor) {
+            if (!executor.isShutdown()) {
+                executor.setCorePoolSize(executor.getCorePoolSize() - 1);
+                executor.setMaximumPoolSize(executor.getMaximumPoolSize() - 1);
+            }
+        }
+    }
+
+    /**
+     * A scenario, run by a worker thread. Its result is set once: either by the worker when the scenario
+     * completes, or by a timeout, whichever comes first.
+     */
+    private class ScenarioTask implements Runnable {
+        // A scenario, or the outline of an example; the scenario of an example is only created when it runs
+        private final CucumberTagStatement statement;
+        private final int line;
+        private final CucumberExamples examples;
+        private final ExamplesTableRow example;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private final StringBuffer output = new StringBuffer();
+        private final StringBuffer errors = new StringBuffer();
+        private final TestSummary testSummary = new TestSummary();
+        private final ThreadPoolExecutor pool = executor;
+        // The thread running the scenario, while it does; guarded by this task
+        private Thread thread;
+        private boolean interrupted;
+        private volatile long started;
+        private volatile ScenarioResult result;
+
+        ScenarioTask(CucumberTagStatement statement, int line, CucumberExamples examples, ExamplesTableRow example) {
+            this.statement = statement;
+            this.line = line;
+            this.examples = examples;
+            this.example = example;
+        }
+
+        @Override
+        public void run() {
+            started = System.nanoTime();
+            synchronized (this) {
+                thread = Thread.currentThread();
+            }
+            try {
+                if (!completed.get()) {
+                    runScenario();
+                }
+            } finally {
+                detach();
+            }
+        }
+
+        private void runScenario() {
+            ScheduledFuture<?> alarm = scenarioTimeout <= 0 ? null : WATCHDOG.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    timeOut("Scenario timed out after " + scenarioTimeout + " ms");
+                }
+            }, scenarioTimeout, TimeUnit.MILLISECONDS);
+
+            ScenarioResult scenarioResult = new ScenarioResult();
+            try {
+                FitNesseResultFormatter formatter = new FitNesseResultFormatter(testSummary,
+                        new Printer() {
+                            @Override
+                            public void write(String text) {
+                                output.append(text);
+                            }
+                        }, new Printer() {
+                            @Override
+                            public void write(String text) {
+                                errors.append(text);
+                            }
+                        });
+                formatter.setEmbeddings(embeddings);
+                if (example != null) {
+                    formatter.example(examples.getExamples().getKeyword(), examples.getExamples().getRows().get(0).getCells(), example);
+                }
+
+                Runtime runtime = runtimeCache.acquire(gluePath);
+                boolean completed = false;
+                try {
+                    scenario().run(formatter, formatter, runtime);
+                    scenarioResult.snippets = runtime.getSnippets();
+                    completed = true;
+                } finally {
+                    // A runtime the scenario failed in is dropped, not handed back
+                    if (completed) {
+                        runtimeCache.release(gluePath, runtime);
+                    }
+                }
+                scenarioResult.duration = formatter.getFeatureDuration();
+                scenarioResult.outcomes = formatter.getOutcomes();
+            } catch (RuntimeException | Error e) {
+                scenarioResult.failure = e;
+            } finally {
+                if (alarm != null) {
+                    alarm.cancel(false);
+                }
+            }
+            scenarioResult.output = output.toString();
+            scenarioResult.errors = errors.toString();
+            scenarioResult.testSummary = testSummary;
+            complete(scenarioResult);
+        }
+
+        private CucumberTagStatement scenario() {
+            return example == null ? statement : ExampleScenarios.scenario((CucumberScenarioOutline) statement, examples, example);
+        }
+
+        /**
+         * Report the scenario as an error, with whatever it has written so far, and interrupt its thread.
+         */
+        void timeOut(String message) {
+            Thread worker;
+            synchronized (this) {
+                worker = thread;
+            }
+            StringBuilder stack = new StringBuilder();
+            if (worker != null) {
+                for (StackTraceElement element : worker.getStackTrace()) {
+                    stack.append("\tat ").append(element).append('\n');
+                }
+            }
+
+            String name = scenario().getVisualName();
+            ScenarioResult scenarioResult = new ScenarioResult();
+            scenarioResult.output = output.toString()
+                    + format("<span class='error'>%s</span><pre>%s</pre>", escapeHTML(message), escapeHTML(stack.toString()));
+            scenarioResult.errors = errors.toString() + format("%s: %s%n%s", name, message, stack);
+            scenarioResult.testSummary = new TestSummary(testSummary.getRight(), testSummary.getWrong(),
+                    testSummary.getIgnores(), testSummary.getExceptions() + 1);
+            scenarioResult.duration = worker == null ? 0 : System.nanoTime() - started;
+            scenarioResult.outcomes = Collections.singletonMap(line,
+                    new ScenarioHistory.Outcome(ExecutionResult.ERROR, name, scenarioResult.testSummary));
+            synchronized (this) {
+                // Only interrupt the thread while it still runs this scenario, not the next one it picked up
+                if (complete(scenarioResult) && thread != null) {
+                    thread.interrupt();
+                    interrupted = true;
+                    replaceWorker(pool);
+                }
+            }
+        }
+
+        /**
+         * The thread is done with this scenario. If it was interrupted for a timeout, the interrupt is cleared
+         * before the thread picks up another scenario.
+         */
+        private synchronized void detach() {
+            thread = null;
+            if (interrupted) {
+                Thread.interrupted();
+                restoreWorker(pool);
+            }
+        }
+
+        private boolean complete(ScenarioResult scenarioResult) {
+            if (!completed.compareAndSet(false, true)) {
+                return false;
+            }
+            result = scenarioResult;
+            done.countDown();
+            return true;
+        }
+    }
+
+    private static class ScenarioResult {
+        String output;
+        String errors;
+        TestSummary testSummary;
+        List<String> snippets = Collections.emptyList();
+        long duration;
+        Map<Integer, ScenarioHistory.Outcome> outcomes = Collections.emptyMap();
+        Throwable failure;
+    }
+}
@@ -0,0 +1,130 @@
+package org.fitnesse.cucumber;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import gherkin.I18n;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.model.*;
+import gherkin.parser.ParseError;
+import gherkin.parser.Parser;
+
+/**
+ * The statements of a parsed feature file, that can be replayed to any Gherkin formatter
+ * (e.g. for rendering a page or building a Cucumber feature), without parsing the file again.
+ */
+class ParsedFeature {
+    private final List<BasicStatement> statements;
+    private final I18n i18n;
+    private final ParseError parseError;
+
+    private ParsedFeature(List<BasicStatement> statements, I18n i18n, ParseError parseError) {
+        this.statements = Collections.unmodifiableList(statements);
+        this.i18n = i18n;
+        this.parseError = parseError;
+    }
+
+    public static ParsedFeature parse(String content) {
+        Recorder recorder = new Recorder();
+        Parser parser = new Parser(recorder);
+        ParseError parseError = null;
+        try {
+            parser.parse(content, "", 0);
+        } catch (ParseError e) {
+            parseError = e;
+        }
+        return new ParsedFeature(recorder.statements, parser.getI18nLanguage(), parseError);
+    }
+
+    /**
+     * Feed the statements to a formatter, followed by {@link Formatter#eof()}.
+     *
+     * @throws ParseError if the feature could not be parsed; statements before the error have been replayed.
+     */
+    public void replay(Formatter formatter) {
+        for (BasicStatement statement : statements) {
+            if (statement instanceof Examples) {
+                copy((Examples) statement).replay(formatter);
+            } else {
+                statement.replay(formatter);
+            }
+        }
+        if (parseError != null) {
+            throw parseError;
+        }
+        formatter.eof();
+    }
+
+    // Filters replace the rows of examples, so every replay gets its own copy
+    private static Examples copy(Examples examples) {
+        return new Examples(examples.getComments(), examples.getTags(), examples.getKeyword(), examples.getName(),
+                examples.getDescription(), examples.getLine(), examples.getId(), new ArrayList<>(examples.getRows()));
+    }
+
+    public I18n getI18n() {
+        return i18n;
+    }
+
+    private static class Recorder implements Formatter {
+        private final List<BasicStatement> statements = new ArrayList<>();
+
+        @Override
+        public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+        }
+
+        @Override
+        public void uri(String uri) {
+        }
+
+        @Override
+        public void feature(Feature feature) {
+            statements.add(feature);
+        }
+
+        @Override
+        public void scenarioOutline(ScenarioOutline scenarioOutline) {
+            statements.add(scenarioOutline);
+        }
+
+        @Override
+        public void examples(Examples examples) {
+            statements.add(examples);
+        }
+
+        @Override
+        public void startOfScenarioLifeCycle(Scenario scenario) {
+        }
+
+        @Override
+        public void background(Background background) {
+            statements.add(background);
+        }
+
+        @Override
+        public void scenario(Scenario scenario) {
+            statements.add(scenario);
+        }
+
+        @Override
+        public void step(Step step) {
+            statements.add(step);
+        }
+
+        @Override
+        public void endOfScenarioLifeCycle(Scenario scenario) {
+        }
+
+        @Override
+        public void done() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void eof() {
+        }
+    }
+}
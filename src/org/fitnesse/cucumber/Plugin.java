@@ -17,6 +17,7 @@ public class Plugin extends PluginFeatureFactoryBase {
     @Override
     public void registerTestSystemFactories(TestSystemFactoryRegistry testSystemFactoryRegistry) {
         testSystemFactoryRegistry.registerTestSystemFactory(CucumberTestSystem.TEST_SYSTEM_NAME, new CucumberTestSystemFactory());
+        CucumberMetrics.getInstance().register();
         LOG.info("Registered Cucumber test system");
     }
 }
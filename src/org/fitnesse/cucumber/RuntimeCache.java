@@ -0,0 +1,132 @@
+package org.fitnesse.cucumber;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cucumber.runtime.Backend;
+import cucumber.runtime.ClassFinder;
+import cucumber.runtime.Reflections;
+import cucumber.runtime.Runtime;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.UndefinedStepsTracker;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.io.ResourceLoaderClassFinder;
+
+/**
+ * Keeps Cucumber runtimes, with their glue loaded, for the lifetime of a test system.
+ * <p>
+ * Runtimes are keyed by glue path. The class loader is fixed for a cache instance,
+ * so a runtime is never shared between class loaders. A runtime is handed out to one
+ * caller at a time: {@link #acquire(String)} it, run the features and {@link #release(String, Runtime)}
+ * it again. Runtimes that are in use at the same time each load their own glue, but the class path
+ * is scanned only once (or not at all, for glue listed in a glue index).
+ * Scenario state (the world) is rebuilt by Cucumber for every scenario, page state
+ * (errors, undefined steps and the scenario statistics) is reset on release. A runtime that a page failed in
+ * should not be released, its last scenario may not have been wound down.
+ */
+class RuntimeCache {
+    private static final Field UNDEFINED_STEPS_TRACKER = field(Runtime.class, "undefinedStepsTracker");
+    private static final Field UNDEFINED_STEPS = field(UndefinedStepsTracker.class, "undefinedSteps");
+    private static final Field STATS = field(Runtime.class, "stats");
+    // Names of the scenarios run, kept by Cucumber for its summary
+    private static final List<Field> STATS_SCENARIOS = STATS == null ? null : Arrays.asList(
+            field(STATS.getType(), "failedScenarios"), field(STATS.getType(), "pendingScenarios"),
+            field(STATS.getType(), "undefinedScenarios"), field(STATS.getType(), "passedScenarios"));
+
+    private final ClassLoader classLoader;
+    private final ResourceLoader resourceLoader;
+    private final Map<String, Deque<Runtime>> idleRuntimes = new HashMap<>();
+
+    public RuntimeCache(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        this.resourceLoader = new CachingResourceLoader(new IndexedResourceLoader(new MultiLoader(classLoader), classLoader));
+    }
+
+    /**
+     * Obtain a runtime for the glue path. Should be called with the context class loader set.
+     */
+    public Runtime acquire(String gluePath) {
+        synchronized (idleRuntimes) {
+            Deque<Runtime> runtimes = idleRuntimes.get(gluePath);
+            if (runtimes != null && !runtimes.isEmpty()) {
+                return runtimes.pop();
+            }
+        }
+        return newRuntime(gluePath);
+    }
+
+    /**
+     * Hand back a runtime, so it can be used for the next page. Runtimes that can not be reset are dropped.
+     */
+    public void release(String gluePath, Runtime runtime) {
+        if (!resetPageState(runtime)) {
+            return;
+        }
+        synchronized (idleRuntimes) {
+            Deque<Runtime> runtimes = idleRuntimes.get(gluePath);
+            if (runtimes == null) {
+                runtimes = new ArrayDeque<>();
+                idleRuntimes.put(gluePath, runtimes);
+            }
+            runtimes.push(runtime);
+        }
+    }
+
+    public void clear() {
+        synchronized (idleRuntimes) {
+            idleRuntimes.clear();
+        }
+    }
+
+    private Runtime newRuntime(String gluePath) {
+        RuntimeOptions runtimeOptions = new RuntimeOptions(Arrays.asList("--glue", gluePath));
+        ClassFinder classFinder = new ResourceLoaderClassFinder(resourceLoader, classLoader);
+        long start = System.nanoTime();
+        // As the runtime would find its backends, so loading the glue, which the runtime does next, can be timed
+        Collection<? extends Backend> backends = new Reflections(classFinder).instantiateSubclasses(Backend.class,
+                "cucumber.runtime", new Class<?>[]{ResourceLoader.class}, new Object[]{resourceLoader});
+        long glueStart = System.nanoTime();
+        Runtime runtime = new Runtime(resourceLoader, classLoader, backends, runtimeOptions);
+        long end = System.nanoTime();
+        CucumberMetrics.getInstance().runtimeCreated(end - start, end - glueStart);
+        return runtime;
+    }
+
+    /**
+     * Reset what a runtime keeps of the pages it ran. False if that is not possible, the runtime should not be reused.
+     */
+    static boolean resetPageState(Runtime runtime) {
+        if (UNDEFINED_STEPS_TRACKER == null || UNDEFINED_STEPS == null || STATS_SCENARIOS == null || STATS_SCENARIOS.contains(null)) {
+            return false;
+        }
+        try {
+            Object tracker = UNDEFINED_STEPS_TRACKER.get(runtime);
+            ((List<?>) UNDEFINED_STEPS.get(tracker)).clear();
+            Object stats = STATS.get(runtime);
+            for (Field scenarios : STATS_SCENARIOS) {
+                ((List<?>) scenarios.get(stats)).clear();
+            }
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+        runtime.getErrors().clear();
+        return true;
+    }
+
+    private static Field field(Class<?> type, String name) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException | SecurityException e) {
+            return null;
+        }
+    }
+}
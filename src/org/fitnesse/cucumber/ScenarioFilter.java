@@ -0,0 +1,137 @@
+package org.fitnesse.cucumber;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import cucumber.runtime.model.CucumberExamples;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberScenarioOutline;
+import cucumber.runtime.model.CucumberTagStatement;
+import fitnesse.testsystems.TestPage;
+import gherkin.formatter.FilterFormatter;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.model.ExamplesTableRow;
+
+/**
+ * Selects the scenarios of a page to run, by tags ({@code cucumber.tags}) and by name ({@code cucumber.name}).
+ * <p>
+ * Tags use the Cucumber syntax: expressions separated by white space must all match, within an expression
+ * tags separated by commas are alternatives and {@code ~} negates a tag, e.g. {@code @smoke,@fast ~@slow}.
+ * The name is a regular expression, that should be found in the name of the scenario.
+ */
+class ScenarioFilter {
+    public static final String TAGS = "cucumber.tags";
+    public static final String NAME = "cucumber.name";
+
+    // No scenario starts at line 0, filtering on it selects nothing
+    private static final Long NO_LINE = 0L;
+
+    private final List<String> tagExpressions;
+    private final List<Pattern> namePatterns;
+    private final List<Long> lines;
+
+    ScenarioFilter(List<String> tagExpressions, List<Pattern> namePatterns, List<Long> lines) {
+        this.tagExpressions = tagExpressions;
+        this.namePatterns = namePatterns;
+        this.lines = lines;
+    }
+
+    public static ScenarioFilter forPage(TestPage testPage) {
+        String tags = testPage.getVariable(TAGS);
+        String name = testPage.getVariable(NAME);
+        return new ScenarioFilter(
+                isBlank(tags) ? new ArrayList<String>() : Arrays.asList(tags.trim().split("\\s+")),
+                isBlank(name) ? new ArrayList<Pattern>() : Arrays.asList(Pattern.compile(name.trim())),
+                null);
+    }
+
+    /**
+     * Narrow the selection down to the scenarios (or examples) on the given lines.
+     */
+    public ScenarioFilter onLines(Collection<Integer> scenarioLines) {
+        List<Long> selectedLines = new ArrayList<>();
+        for (Integer line : scenarioLines) {
+            selectedLines.add(line.longValue());
+        }
+        if (selectedLines.isEmpty()) {
+            selectedLines.add(NO_LINE);
+        }
+        return new ScenarioFilter(tagExpressions, namePatterns, selectedLines);
+    }
+
+    public boolean isEmpty() {
+        return tagExpressions.isEmpty() && namePatterns.isEmpty() && lines == null;
+    }
+
+    /**
+     * Wrap a formatter, typically a feature builder, so it only receives the selected scenarios.
+     */
+    public Formatter filter(Formatter formatter) {
+        if (!tagExpressions.isEmpty()) {
+            formatter = new FilterFormatter(formatter, tagExpressions);
+        }
+        if (!namePatterns.isEmpty()) {
+            formatter = new FilterFormatter(formatter, namePatterns);
+        }
+        if (lines != null) {
+            formatter = new FilterFormatter(formatter, lines);
+        }
+        return formatter;
+    }
+
+    /**
+     * Names of the scenarios (and examples) in all features, that are not in the selected features, by line.
+     */
+    public static Map<Integer, String> excluded(List<CucumberFeature> allFeatures, List<CucumberFeature> selectedFeatures) {
+        Set<Integer> selected = new HashSet<>();
+        for (CucumberFeature feature : selectedFeatures) {
+            for (CucumberTagStatement statement : feature.getFeatureElements()) {
+                selected.addAll(lines(statement));
+            }
+        }
+        Map<Integer, String> excluded = new LinkedHashMap<>();
+        for (CucumberFeature feature : allFeatures) {
+            for (CucumberTagStatement statement : feature.getFeatureElements()) {
+                if (statement instanceof CucumberScenarioOutline) {
+                    for (CucumberExamples examples : ((CucumberScenarioOutline) statement).getCucumberExamplesList()) {
+                        List<ExamplesTableRow> rows = examples.getExamples().getRows();
+                        for (ExamplesTableRow row : rows.subList(1, rows.size())) {
+                            if (!selected.contains(row.getLine())) {
+                                excluded.put(row.getLine(), statement.getVisualName() + " " + row.getCells());
+                            }
+                        }
+                    }
+                } else if (!selected.contains(statement.getGherkinModel().getLine())) {
+                    excluded.put(statement.getGherkinModel().getLine(), statement.getVisualName());
+                }
+            }
+        }
+        return excluded;
+    }
+
+    private static List<Integer> lines(CucumberTagStatement statement) {
+        List<Integer> lines = new ArrayList<>();
+        if (statement instanceof CucumberScenarioOutline) {
+            for (CucumberExamples examples : ((CucumberScenarioOutline) statement).getCucumberExamplesList()) {
+                List<ExamplesTableRow> rows = examples.getExamples().getRows();
+                for (ExamplesTableRow row : rows.subList(1, rows.size())) {
+                    lines.add(row.getLine());
+                }
+            }
+        } else {
+            lines.add(statement.getGherkinModel().getLine());
+        }
+        return lines;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
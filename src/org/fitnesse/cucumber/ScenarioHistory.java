@@ -0,0 +1,384 @@
+package org.fitnesse.cucumber;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import fitnesse.testsystems.ExecutionResult;
+import fitnesse.testsystems.TestSummary;
+
+/**
+ * Outcome of every scenario (and example) of the last run, per feature, kept in a file so
+ * a next run can pick up where this one left. Scenarios are identified by their line in the feature.
+ * <p>
+ * Features that passed in full can be marked with a fingerprint of what was run.
+ * <p>
+ * The file is a log: updates are appended, later lines override earlier ones, and the file is rewritten once most of
+ * it is overridden. A line per scenario has feature path, scenario line, result, the counts of its steps (right,
+ * wrong, ignored and exceptions, separated by commas) and scenario name, separated by tabs. A full run of a feature
+ * starts with a line with feature path and {@code clear}. Fingerprints have a line with feature path,
+ * {@code fingerprint} and the fingerprint (empty when it is forgotten).
+ * <p>
+ * The file is read again when it changed, e.g. because it was reset. Test systems in other processes, like forked
+ * workers, can use the same file: the history is read and written while holding a lock on a file next to it, so
+ * what one process appends is seen by the others before they append or compact.
+ */
+class ScenarioHistory {
+    private static final Map<File, ScenarioHistory> HISTORIES = new HashMap<>();
+    // File locks are held by the JVM, so threads of one JVM take turns first
+    private static final Map<File, ReentrantLock> LOCKS = new HashMap<>();
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String CLEAR = "clear";
+    private static final Pattern COUNTS = Pattern.compile("\\d+,\\d+,\\d+,\\d+");
+    private static final int MIN_RECORDS_TO_COMPACT = 1000;
+
+    private final File file;
+    private final Map<String, Map<Integer, Outcome>> features = new LinkedHashMap<>();
+    private final Map<String, String> fingerprints = new LinkedHashMap<>();
+
+    // How far the file has been read, and what it looked like then
+    private long readLength;
+    private long readModified;
+    private Object readKey;
+    private int records;
+
+    ScenarioHistory(File file) {
+        this.file = file;
+    }
+
+    /**
+     * The history kept in a file. Test systems running at the same time share the instance.
+     */
+    public static ScenarioHistory forFile(File file) {
+        synchronized (HISTORIES) {
+            ScenarioHistory history = HISTORIES.get(file.getAbsoluteFile());
+            if (history == null) {
+                history = new ScenarioHistory(file.getAbsoluteFile());
+                HISTORIES.put(file.getAbsoluteFile(), history);
+            }
+            return history;
+        }
+    }
+
+    /**
+     * Outcomes of the last run of a feature, by line. Null if the feature has not been run before.
+     */
+    public synchronized Map<Integer, Outcome> get(String featurePath) throws IOException {
+        FileChannel lock = lock();
+        try {
+            refresh();
+            Map<Integer, Outcome> outcomes = features.get(featurePath);
+            return outcomes != null ? new TreeMap<>(outcomes) : null;
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    /**
+     * Record the outcomes of a run. Outcomes of scenarios that did not run are kept if {@code merge} is set,
+     * otherwise they are forgotten.
+     */
+    public synchronized void update(String featurePath, Map<Integer, Outcome> outcomes, boolean merge) throws IOException {
+        FileChannel lock = lock();
+        try {
+            refresh();
+            List<String> lines = new ArrayList<>();
+            if (!merge || !features.containsKey(featurePath)) {
+                lines.add(featurePath + "\t" + CLEAR);
+            }
+            for (Map.Entry<Integer, Outcome> outcome : new TreeMap<>(outcomes).entrySet()) {
+                TestSummary counts = outcome.getValue().counts;
+                lines.add(featurePath + "\t" + outcome.getKey() + "\t" + outcome.getValue().result.name() + "\t"
+                        + counts.getRight() + "," + counts.getWrong() + "," + counts.getIgnores() + "," + counts.getExceptions() + "\t"
+                        + outcome.getValue().name.replaceAll("[\t\r\n]", " "));
+            }
+            append(lines);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    public synchronized String getFingerprint(String featurePath) throws IOException {
+        FileChannel lock = lock();
+        try {
+            refresh();
+            return fingerprints.get(featurePath);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    /**
+     * Mark a feature as passed for a fingerprint, or forget the fingerprint if it is null.
+     */
+    public synchronized void setFingerprint(String featurePath, String fingerprint) throws IOException {
+        FileChannel lock = lock();
+        try {
+            refresh();
+            String previous = fingerprints.get(featurePath);
+            if (fingerprint == null ? previous != null : !fingerprint.equals(previous)) {
+                append(Collections.singletonList(featurePath + "\t" + FINGERPRINT + "\t" + (fingerprint != null ? fingerprint : "")));
+            }
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    /**
+     * Lock the history for this thread and process, until it is unlocked.
+     */
+    private FileChannel lock() throws IOException {
+        ReentrantLock threadLock = threadLock();
+        threadLock.lock();
+        try {
+            File parent = file.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            FileChannel channel = FileChannel.open(lockFile(file).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                channel.lock();
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            threadLock.unlock();
+            throw e;
+        }
+    }
+
+    private void unlock(FileChannel lock) throws IOException {
+        try {
+            // Closing the channel releases the file lock
+            lock.close();
+        } finally {
+            threadLock().unlock();
+        }
+    }
+
+    private ReentrantLock threadLock() {
+        synchronized (LOCKS) {
+            ReentrantLock threadLock = LOCKS.get(file);
+            if (threadLock == null) {
+                threadLock = new ReentrantLock();
+                LOCKS.put(file, threadLock);
+            }
+            return threadLock;
+        }
+    }
+
+    /**
+     * The file processes sharing a history lock, next to the history. It is left in place.
+     */
+    static File lockFile(File file) {
+        return new File(file.getPath() + ".lock");
+    }
+
+    /**
+     * Catch up with the file: read what was appended since it was last read, or all of it if it was replaced or edited.
+     */
+    private void refresh() throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            attributes = null;
+        }
+        if (attributes == null) {
+            clear();
+        } else if (attributes.size() != readLength || attributes.lastModifiedTime().toMillis() != readModified
+                || !Objects.equals(attributes.fileKey(), readKey)) {
+            if (attributes.size() <= readLength || !Objects.equals(attributes.fileKey(), readKey)) {
+                clear();
+            }
+            read();
+            readModified = attributes.lastModifiedTime().toMillis();
+            readKey = attributes.fileKey();
+        }
+    }
+
+    private void clear() {
+        features.clear();
+        fingerprints.clear();
+        readLength = 0;
+        readModified = 0;
+        readKey = null;
+        records = 0;
+    }
+
+    // Read complete lines from where the last read ended
+    private void read() throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            if (readLength > 0) {
+                skip(in, readLength - 1);
+                if (in.read() != '\n') {
+                    // Not the file that was read before, start over
+                    clear();
+                    read();
+                    return;
+                }
+            }
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long position = readLength;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    apply(new String(line.toByteArray(), StandardCharsets.UTF_8).replaceAll("\r$", ""));
+                    line.reset();
+                    readLength = position;
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+    }
+
+    private static void skip(InputStream in, long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = in.skip(bytes);
+            if (skipped <= 0) {
+                throw new IOException("Scenario history is shorter than expected");
+            }
+            bytes -= skipped;
+        }
+    }
+
+    private void apply(String line) {
+        records++;
+        String[] fields = line.split("\t", 5);
+        if (fields.length == 2 && CLEAR.equals(fields[1])) {
+            features.remove(fields[0]);
+        } else if (fields.length == 3 && FINGERPRINT.equals(fields[1])) {
+            if (fields[2].isEmpty()) {
+                fingerprints.remove(fields[0]);
+            } else {
+                fingerprints.put(fields[0], fields[2]);
+            }
+        } else if (fields.length >= 4) {
+            try {
+                Integer scenarioLine = Integer.valueOf(fields[1]);
+                ExecutionResult result = ExecutionResult.valueOf(fields[2]);
+                // Lines written before step counts were kept have the name as fourth field
+                Outcome outcome = fields.length == 5 && COUNTS.matcher(fields[3]).matches()
+                        ? new Outcome(result, fields[4], counts(fields[3]))
+                        : new Outcome(result, line.split("\t", 4)[3]);
+                Map<Integer, Outcome> outcomes = features.get(fields[0]);
+                if (outcomes == null) {
+                    outcomes = new TreeMap<>();
+                    features.put(fields[0], outcomes);
+                }
+                outcomes.put(scenarioLine, outcome);
+            } catch (IllegalArgumentException e) {
+                // Not a line we wrote, skip it
+            }
+        }
+    }
+
+    private static TestSummary counts(String field) {
+        String[] counts = field.split(",");
+        return new TestSummary(Integer.parseInt(counts[0]), Integer.parseInt(counts[1]),
+                Integer.parseInt(counts[2]), Integer.parseInt(counts[3]));
+    }
+
+    // Append lines, holding the lock since the file was refreshed
+    private void append(List<String> lines) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(bytes);
+        }
+        for (String line : lines) {
+            apply(line);
+        }
+        readLength += bytes.length;
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        readModified = attributes.lastModifiedTime().toMillis();
+        readKey = attributes.fileKey();
+
+        if (records >= MIN_RECORDS_TO_COMPACT && records > 2 * liveRecords()) {
+            compact();
+        }
+    }
+
+    private int liveRecords() {
+        int live = features.size() + fingerprints.size();
+        for (Map<Integer, Outcome> outcomes : features.values()) {
+            live += outcomes.size();
+        }
+        return live;
+    }
+
+    // Write what is current to a new file and move it in place, so the history is never left half written
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Map<Integer, Outcome>> feature : features.entrySet()) {
+                writer.write(feature.getKey() + "\t" + CLEAR + "\n");
+                for (Map.Entry<Integer, Outcome> outcome : feature.getValue().entrySet()) {
+                    TestSummary counts = outcome.getValue().counts;
+                    writer.write(feature.getKey() + "\t" + outcome.getKey() + "\t" + outcome.getValue().result.name() + "\t"
+                            + counts.getRight() + "," + counts.getWrong() + "," + counts.getIgnores() + "," + counts.getExceptions()
+                            + "\t" + outcome.getValue().name + "\n");
+                }
+            }
+            for (Map.Entry<String, String> fingerprint : fingerprints.entrySet()) {
+                writer.write(fingerprint.getKey() + "\t" + FINGERPRINT + "\t" + fingerprint.getValue() + "\n");
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        clear();
+        refresh();
+    }
+
+    static class Outcome {
+        final ExecutionResult result;
+        final String name;
+        // Steps and hooks of the scenario by result, as they count in the test summary
+        final TestSummary counts;
+
+        /**
+         * An outcome without step counts, it counts as one step with the scenario's result.
+         */
+        Outcome(ExecutionResult result, String name) {
+            this(result, name, new TestSummary());
+            counts.add(result);
+        }
+
+        Outcome(ExecutionResult result, String name, TestSummary counts) {
+            this.result = result;
+            this.name = name;
+            this.counts = counts;
+        }
+
+        public boolean isFailed() {
+            return result == ExecutionResult.FAIL || result == ExecutionResult.ERROR;
+        }
+    }
+}
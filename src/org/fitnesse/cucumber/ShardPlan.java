@@ -0,0 +1,122 @@
+package org.fitnesse.cucumber;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Divides features over a number of shards, so that each shard takes about as long to run.
+ * <p>
+ * Features with a known duration are assigned longest first, each to the shard with the least work so far.
+ * Features without a duration are assigned by a hash of their path. Every shard that plans with the same
+ * durations comes to the same plan, so together the shards run every feature exactly once. Feature paths are
+ * relative to the directory of the features, so they are the same in every checkout.
+ * <p>
+ * Durations are kept in a file with a line per feature: feature path and duration in milliseconds, separated by a
+ * tab. {@link ShardReport} writes it from the merged results of all shards.
+ */
+class ShardPlan {
+    private static final Map<File, ShardPlan> PLANS = new HashMap<>();
+
+    private final int shards;
+    private final Map<String, Integer> assignments = new HashMap<>();
+    private final long[] loads;
+    // What the durations file looked like when the plan was made
+    private long fileModified;
+    private long fileLength;
+
+    /**
+     * @param durations duration per feature path, in milliseconds
+     */
+    public ShardPlan(Map<String, Long> durations, int shards) {
+        this.shards = shards;
+        this.loads = new long[shards];
+
+        List<Map.Entry<String, Long>> features = new ArrayList<>(durations.entrySet());
+        Collections.sort(features, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                int byDuration = Long.compare(b.getValue(), a.getValue());
+                return byDuration != 0 ? byDuration : a.getKey().compareTo(b.getKey());
+            }
+        });
+        for (Map.Entry<String, Long> feature : features) {
+            int shard = 0;
+            for (int i = 1; i < shards; i++) {
+                if (loads[i] < loads[shard]) {
+                    shard = i;
+                }
+            }
+            assignments.put(feature.getKey(), shard);
+            loads[shard] += feature.getValue();
+        }
+    }
+
+    /**
+     * The plan for the durations in a file. It is made once, and again only when the file changes, so all pages of a
+     * run are planned alike. A missing file has no durations.
+     */
+    public static ShardPlan forFile(File durations, int shards) throws IOException {
+        File file = durations.getAbsoluteFile();
+        synchronized (PLANS) {
+            ShardPlan plan = PLANS.get(file);
+            if (plan == null || plan.shards != shards || plan.fileModified != file.lastModified()
+                    || plan.fileLength != file.length()) {
+                long modified = file.lastModified();
+                long length = file.length();
+                plan = new ShardPlan(readDurations(file), shards);
+                plan.fileModified = modified;
+                plan.fileLength = length;
+                PLANS.put(file, plan);
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * Durations per feature path, as kept in a file. Lines that can not be read are skipped.
+     */
+    static Map<String, Long> readDurations(File file) throws IOException {
+        Map<String, Long> durations = new HashMap<>();
+        if (!file.exists()) {
+            return durations;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 2) {
+                    try {
+                        durations.put(fields[0], Long.valueOf(fields[1]));
+                    } catch (NumberFormatException e) {
+                        // Not a line we wrote, skip it
+                    }
+                }
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Shard (counting from 0) that runs a feature.
+     */
+    public int shardOf(String featurePath) {
+        Integer shard = assignments.get(featurePath);
+        return shard != null ? shard : (featurePath.hashCode() & Integer.MAX_VALUE) % shards;
+    }
+
+    /**
+     * Sum of the known durations of the features of a shard, in milliseconds.
+     */
+    public long load(int shard) {
+        return loads[shard];
+    }
+}
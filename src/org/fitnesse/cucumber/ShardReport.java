@@ -0,0 +1,168 @@
+package org.fitnesse.cucumber;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import fitnesse.testsystems.TestSummary;
+
+import static fitnesse.html.HtmlUtil.escapeHTML;
+import static java.lang.String.format;
+
+/**
+ * Results of the pages run by a shard, kept in a directory, and merged into one suite report afterwards:
+ * <pre>java org.fitnesse.cucumber.ShardReport report-dir merged.html [durations.tsv]</pre>
+ * Every shard writes a summary file, {@code shard-N.tsv}, with a line per page: feature path, right, wrong,
+ * ignores, exceptions, duration in milliseconds and the file that holds the HTML of the page. Shards should
+ * start from an empty directory.
+ * <p>
+ * When a durations file is given, the durations of the pages of all shards are merged into it, for the
+ * {@link ShardPlan} of the next run.
+ */
+public class ShardReport {
+    private final File dir;
+    private final int shard;
+
+    /**
+     * @param shard shard number, counting from 1
+     */
+    public ShardReport(File dir, int shard) {
+        this.dir = dir;
+        this.shard = shard;
+    }
+
+    public void add(String featurePath, TestSummary testSummary, long duration, String html) throws IOException {
+        dir.mkdirs();
+        String htmlFile = FeatureCache.checksum(featurePath) + ".html";
+        Files.write(new File(dir, htmlFile).toPath(), html.getBytes(StandardCharsets.UTF_8));
+        String line = format("%s\t%d\t%d\t%d\t%d\t%d\t%s%n", featurePath.replaceAll("[\t\r\n]", " "),
+                testSummary.getRight(), testSummary.getWrong(), testSummary.getIgnores(), testSummary.getExceptions(),
+                duration, htmlFile);
+        synchronized (ShardReport.class) {
+            Files.write(new File(dir, "shard-" + shard + ".tsv").toPath(), line.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            System.err.println("Usage: java " + ShardReport.class.getName() + " report-dir merged.html [durations.tsv]");
+            System.exit(1);
+        }
+        merge(new File(args[0]), new File(args[1]), args.length == 3 ? new File(args[2]) : null);
+    }
+
+    /**
+     * Write one report for the pages of all shards, in order of feature path, with the totals on top, and update the
+     * durations file, if any.
+     */
+    static TestSummary merge(File dir, File report, File durations) throws IOException {
+        List<Page> pages = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith("shard-") && file.getName().endsWith(".tsv")) {
+                    read(file, pages);
+                }
+            }
+        }
+        Collections.sort(pages, new Comparator<Page>() {
+            @Override
+            public int compare(Page a, Page b) {
+                return a.featurePath.compareTo(b.featurePath);
+            }
+        });
+
+        TestSummary total = new TestSummary();
+        for (Page page : pages) {
+            total.add(page.testSummary);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(report.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(format("<html><head><meta charset='UTF-8'><title>Cucumber suite</title></head><body>%n"));
+            writer.write(format("<h1>%d right, %d wrong, %d ignored, %d exceptions</h1>%n",
+                    total.getRight(), total.getWrong(), total.getIgnores(), total.getExceptions()));
+            writer.write(format("<table><tr><th>Feature</th><th>Shard</th><th>Right</th><th>Wrong</th><th>Ignored</th><th>Exceptions</th><th>Time (ms)</th></tr>%n"));
+            for (int i = 0; i < pages.size(); i++) {
+                Page page = pages.get(i);
+                writer.write(format("<tr><td><a href='#page%d'>%s</a></td><td>%d</td><td>%d</td><td>%d</td><td>%d</td><td>%d</td><td>%d</td></tr>%n",
+                        i, escapeHTML(page.featurePath), page.shard, page.testSummary.getRight(), page.testSummary.getWrong(),
+                        page.testSummary.getIgnores(), page.testSummary.getExceptions(), page.duration));
+            }
+            writer.write(format("</table>%n"));
+            for (int i = 0; i < pages.size(); i++) {
+                Page page = pages.get(i);
+                writer.write(format("<h2 id='page%d'>%s</h2>%n", i, escapeHTML(page.featurePath)));
+                writer.write(new String(Files.readAllBytes(new File(dir, page.htmlFile).toPath()), StandardCharsets.UTF_8));
+                writer.newLine();
+            }
+            writer.write(format("</body></html>%n"));
+        }
+        if (durations != null) {
+            writeDurations(pages, durations);
+        }
+        return total;
+    }
+
+    // Durations of features that did not run this time are kept. The file is replaced at once, as shards may read it
+    private static void writeDurations(List<Page> pages, File file) throws IOException {
+        Map<String, Long> durations = new TreeMap<>(ShardPlan.readDurations(file));
+        for (Page page : pages) {
+            durations.put(page.featurePath, page.duration);
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        Path temp = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Long> duration : durations.entrySet()) {
+                    writer.write(duration.getKey() + "\t" + duration.getValue() + "\n");
+                }
+            }
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void read(File file, List<Page> pages) throws IOException {
+        int shard = Integer.parseInt(file.getName().substring("shard-".length(), file.getName().length() - ".tsv".length()));
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 7) {
+                    pages.add(new Page(fields[0], shard, new TestSummary(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                            Integer.parseInt(fields[3]), Integer.parseInt(fields[4])), Long.parseLong(fields[5]), fields[6]));
+                }
+            }
+        }
+    }
+
+    private static class Page {
+        final String featurePath;
+        final int shard;
+        final TestSummary testSummary;
+        final long duration;
+        final String htmlFile;
+
+        Page(String featurePath, int shard, TestSummary testSummary, long duration, String htmlFile) {
+            this.featurePath = featurePath;
+            this.shard = shard;
+            this.testSummary = testSummary;
+            this.duration = duration;
+            this.htmlFile = htmlFile;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.fitnesse.cucumber;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import fitnesse.testsystems.ExecutionLogListener;
+import fitnesse.testsystems.TestPage;
+import fitnesse.testsystems.TestSummary;
+import fitnesse.testsystems.TestSystemListener;
+
+import static java.lang.String.format;
+
+/**
+ * Worker JVMs (see {@link CucumberWorker}) that run pages for forked test systems. Workers are kept after a
+ * test system is done, so the next test system with the same class path and JVM arguments starts with glue
+ * already loaded.
+ * <p>
+ * As with the {@link ClassLoaderPool}, a worker is only reused if none of the class path elements changed since it
+ * was started. A worker is stopped once it has run its maximum number of pages, or when the heap it retains after
+ * garbage collection reaches its limit, and when it does not complete a page in time.
+ */
+class WorkerPool {
+    private static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(new CucumberThreadFactory("cucumber-worker-timeout", null));
+
+    private final Map<String, Deque<Worker>> idleWorkers = new HashMap<>();
+
+    /**
+     * @param maxPages number of pages after which a worker is replaced, 0 for no limit
+     * @param maxHeap  retained heap in bytes after which a worker is replaced, 0 for no limit
+     */
+    public Worker acquire(List<String> classPath, List<String> jvmArgs, int maxPages, long maxHeap) throws IOException {
+        String key = jvmArgs + " " + classPath;
+        String stamp = ClassLoaderPool.stamp(classPath);
+        synchronized (this) {
+            Deque<Worker> idle = idleWorkers.get(key);
+            if (idle != null) {
+                while (!idle.isEmpty()) {
+                    Worker worker = idle.pop();
+                    if (stamp.equals(worker.stamp) && worker.isAlive()) {
+                        return worker;
+                    }
+                    worker.stop();
+                }
+            }
+        }
+        return new Worker(command(classPath, jvmArgs), key, stamp, maxPages, maxHeap);
+    }
+
+    /**
+     * Hand back a worker, so it can run pages for the next test system. Workers that are worn out are stopped.
+     */
+    public void release(Worker worker) {
+        if (!worker.isAlive() || worker.isWornOut()) {
+            worker.stop();
+            return;
+        }
+        synchronized (this) {
+            Deque<Worker> idle = idleWorkers.get(worker.key);
+            if (idle == null) {
+                idle = new ArrayDeque<>();
+                idleWorkers.put(worker.key, idle);
+            }
+            idle.push(worker);
+        }
+    }
+
+    synchronized int idleCount() {
+        int count = 0;
+        for (Deque<Worker> workers : idleWorkers.values()) {
+            count += workers.size();
+        }
+        return count;
+    }
+
+    private static List<String> command(List<String> classPath, List<String> jvmArgs) {
+        Set<String> workerClassPath = new LinkedHashSet<>(hostClassPath());
+        workerClassPath.addAll(classPath);
+        StringBuilder path = new StringBuilder();
+        for (String element : workerClassPath) {
+            path.append(path.length() > 0 ? File.pathSeparator : "").append(element);
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(path.toString());
+        command.add(CucumberWorker.class.getName());
+        return command;
+    }
+
+    /**
+     * Class path the plugin itself was loaded from: FitNesse, Cucumber and the plugin jars.
+     */
+    private static List<String> hostClassPath() {
+        List<String> classPath = new ArrayList<>();
+        List<ClassLoader> classLoaders = new ArrayList<>();
+        for (ClassLoader classLoader = WorkerPool.class.getClassLoader(); classLoader != null; classLoader = classLoader.getParent()) {
+            classLoaders.add(0, classLoader);
+        }
+        for (ClassLoader classLoader : classLoaders) {
+            if (classLoader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                    try {
+                        classPath.add(new File(url.toURI()).getPath());
+                    } catch (URISyntaxException | IllegalArgumentException e) {
+                        // not a local file, a worker can not use it
+                    }
+                }
+            }
+        }
+        for (String element : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classPath.add(element);
+        }
+        return classPath;
+    }
+
+    /**
+     * A worker JVM, running one page at a time.
+     */
+    static class Worker {
+        private final String key;
+        private final String stamp;
+        private final int maxPages;
+        private final long maxHeap;
+        private final Process process;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private int pagesRun;
+        private long retainedHeap;
+        private volatile boolean timedOut;
+
+        Worker(List<String> command, String key, String stamp, int maxPages, long maxHeap) throws IOException {
+            this.key = key;
+            this.stamp = stamp;
+            this.maxPages = maxPages;
+            this.maxHeap = maxHeap;
+            this.process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        /**
+         * Run a page in the worker. Output is passed on to the listener as it comes in, the summary is returned.
+         * A worker that does not complete the page within {@code timeout} milliseconds (if more than 0) is stopped.
+         */
+        public TestSummary run(TestPage testPage, TestSystemListener listener, ExecutionLogListener executionLogListener,
+                               final long timeout) throws IOException {
+            ScheduledFuture<?> timer = null;
+            if (timeout > 0) {
+                timer = TIMER.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        timedOut = true;
+                        stop();
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+            try {
+                return run(testPage, listener, executionLogListener);
+            } catch (IOException e) {
+                if (timedOut) {
+                    throw new IOException(format("page did not complete within %ds, worker JVM stopped",
+                            TimeUnit.MILLISECONDS.toSeconds(timeout)), e);
+                }
+                throw e;
+            } finally {
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+            }
+        }
+
+        private TestSummary run(TestPage testPage, TestSystemListener listener, ExecutionLogListener executionLogListener) throws IOException {
+            out.writeByte(CucumberWorker.PAGE);
+            CucumberWorker.writeString(out, testPage.getName());
+            CucumberWorker.writeString(out, CucumberTestSystem.featurePath(testPage));
+            CucumberWorker.writeString(out, CucumberTestSystem.shardKey(testPage));
+            CucumberWorker.writeString(out, testPage.getContent());
+            out.writeInt(CucumberWorker.VARIABLES.length);
+            for (String variable : CucumberWorker.VARIABLES) {
+                CucumberWorker.writeString(out, variable);
+                CucumberWorker.writeString(out, CucumberTestSystem.variable(testPage, variable));
+            }
+            out.flush();
+
+            while (true) {
+                int response = in.readByte();
+                if (response == CucumberWorker.OUTPUT) {
+                    listener.testOutputChunk(CucumberWorker.readString(in));
+                } else if (response == CucumberWorker.ERROR) {
+                    executionLogListener.stdErr(CucumberWorker.readString(in));
+                } else if (response == CucumberWorker.COMPLETE) {
+                    TestSummary testSummary = new TestSummary(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                    retainedHeap = in.readLong();
+                    pagesRun++;
+                    return testSummary;
+                } else {
+                    throw new IOException("Unexpected response " + response + " from worker");
+                }
+            }
+        }
+
+        boolean isAlive() {
+            if (timedOut) {
+                return false;
+            }
+            try {
+                process.exitValue();
+                return false;
+            } catch (IllegalThreadStateException e) {
+                return true;
+            }
+        }
+
+        boolean isWornOut() {
+            return (maxPages > 0 && pagesRun >= maxPages) || (maxHeap > 0 && retainedHeap >= maxHeap);
+        }
+
+        void stop() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // the worker is gone already
+            }
+            process.destroy();
+        }
+    }
+}
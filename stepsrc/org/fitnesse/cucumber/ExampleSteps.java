@@ -47,4 +47,9 @@ public class ExampleSteps {
             throw new AssertionError("x is " + x + ", but should be " + value);
     }
 
+    @When("^a step that hangs$")
+    public void hang() throws InterruptedException {
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
 }
\ No newline at end of file
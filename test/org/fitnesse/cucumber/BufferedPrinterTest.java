@@ -0,0 +1,82 @@
+package org.fitnesse.cucumber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BufferedPrinterTest {
+
+    private final List<String> chunks = new ArrayList<>();
+    private final Printer printer = new Printer() {
+        @Override
+        public void write(String text) {
+            chunks.add(text);
+        }
+    };
+
+    @Test
+    public void smallFragmentsAreGatheredUntilFlushed() {
+        BufferedPrinter bufferedPrinter = new BufferedPrinter(printer, 1024, 60000);
+
+        bufferedPrinter.write("<tr>");
+        bufferedPrinter.write("<td>cell</td>");
+        bufferedPrinter.write("</tr>");
+
+        assertThat(chunks.isEmpty(), is(true));
+
+        bufferedPrinter.flush();
+
+        assertThat(chunks, is(asList("<tr><td>cell</td></tr>")));
+    }
+
+    @Test
+    public void bufferIsPassedOnWhenItIsFull() {
+        BufferedPrinter bufferedPrinter = new BufferedPrinter(printer, 8, 60000);
+
+        bufferedPrinter.write("<tr>");
+        bufferedPrinter.write("</tr>");
+        bufferedPrinter.write("<tr>");
+
+        assertThat(chunks, is(asList("<tr></tr>")));
+    }
+
+    @Test
+    public void bufferIsPassedOnWhenTheFlushIntervalHasPassed() {
+        BufferedPrinter bufferedPrinter = new BufferedPrinter(printer, 1024, 0);
+
+        bufferedPrinter.write("<tr>");
+        bufferedPrinter.write("</tr>");
+
+        assertThat(chunks, is(asList("<tr>", "</tr>")));
+    }
+
+    @Test
+    public void emptyBufferIsNotPassedOn() {
+        BufferedPrinter bufferedPrinter = new BufferedPrinter(printer, 1024, 60000);
+
+        bufferedPrinter.flush();
+
+        assertThat(chunks.isEmpty(), is(true));
+    }
+
+    @Test
+    public void bufferIsPassedOnWhenTheFlushIntervalHasPassedWithoutFurtherWrites() throws InterruptedException {
+        final CountDownLatch flushed = new CountDownLatch(1);
+        BufferedPrinter bufferedPrinter = new BufferedPrinter(new Printer() {
+            @Override
+            public void write(String text) {
+                flushed.countDown();
+            }
+        }, 1024, 50);
+
+        bufferedPrinter.write("<tr>");
+
+        assertThat(flushed.await(5, TimeUnit.SECONDS), is(true));
+    }
+}
@@ -0,0 +1,84 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import util.FileUtil;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ClassLoaderPoolTest {
+    private static final long TTL = 60000;
+
+    private final ClassLoaderPool pool = new ClassLoaderPool(getClass().getClassLoader());
+    private File classesDir;
+    private List<String> classPath;
+
+    @Before
+    public void setUp() throws IOException {
+        classesDir = File.createTempFile("classes", "");
+        classesDir.delete();
+        classesDir.mkdir();
+        FileUtil.createFile(new File(classesDir, "Glue.class"), "");
+        new File(classesDir, "Glue.class").setLastModified(10000L);
+        classPath = asList(classesDir.getPath());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtil.deleteFileSystemDirectory(classesDir);
+    }
+
+    @Test
+    public void closedClassLoaderIsReused() throws IOException {
+        URLClassLoader classLoader = pool.acquire(classPath, TTL);
+        classLoader.close();
+
+        assertThat(pool.acquire(classPath, TTL), sameInstance(classLoader));
+    }
+
+    @Test
+    public void classLoaderInUseIsNotHandedOutTwice() {
+        URLClassLoader classLoader = pool.acquire(classPath, TTL);
+
+        assertThat(pool.acquire(classPath, TTL), not(sameInstance(classLoader)));
+    }
+
+    @Test
+    public void classLoaderIsNotReusedWhenClassesChanged() throws IOException {
+        URLClassLoader classLoader = pool.acquire(classPath, TTL);
+        classLoader.close();
+
+        new File(classesDir, "Glue.class").setLastModified(20000L);
+
+        assertThat(pool.acquire(classPath, TTL), not(sameInstance(classLoader)));
+        assertThat(pool.idleCount(), is(0));
+    }
+
+    @Test
+    public void idleClassLoadersAreEvictedAfterTheirTimeToLive() throws IOException {
+        pool.acquire(classPath, 0).close();
+
+        pool.evictExpired();
+
+        assertThat(pool.idleCount(), is(0));
+    }
+
+    @Test
+    public void idleClassLoadersAreKeptWithinTheirTimeToLive() throws IOException {
+        pool.acquire(classPath, TTL).close();
+
+        pool.evictExpired();
+
+        assertThat(pool.idleCount(), is(1));
+    }
+}
@@ -1,12 +1,17 @@
 package org.fitnesse.cucumber;
 
 import java.io.File;
+import java.io.IOException;
 import org.junit.Test;
 
 import fitnesse.wiki.WikiPage;
+import util.FileUtil;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class CucumberFeaturePageTest {
 
@@ -16,4 +21,62 @@ public class CucumberFeaturePageTest {
         String html = storyPage.getHtml();
         assertThat(html, containsString("<h4>Scenario: 2 squared</h4>"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void changedFeatureFileIsRenderedAgain() throws IOException {
+        File featureFile = File.createTempFile("changing", ".feature");
+        try {
+            FileUtil.createFile(featureFile, "Feature: first\n");
+            featureFile.setLastModified(10000L);
+            WikiPage storyPage = new CucumberFeaturePage(featureFile, "changing", null);
+            assertThat(storyPage.getHtml(), containsString("<h3>Feature: first</h3>"));
+
+            FileUtil.createFile(featureFile, "Feature: second\n");
+            featureFile.setLastModified(20000L);
+            assertThat(storyPage.getHtml(), containsString("<h3>Feature: second</h3>"));
+        } finally {
+            featureFile.delete();
+        }
+    }
+
+    @Test
+    public void largeExamplesTablesCollapseTheRowsAfterTheFirst() throws IOException {
+        File featureFile = largeFeature();
+        try {
+            String html = new CucumberFeaturePage(featureFile, "large", null).getHtml();
+            assertThat(html, containsString("<tr><td>100000</td></tr></table><details><summary>50 more rows</summary>"
+                    + "<table><tr><td>value</td></tr><tr><td>101000</td></tr>"));
+            assertThat(html, containsString("<tr><td>150000</td></tr></table></details>"));
+        } finally {
+            featureFile.delete();
+        }
+    }
+
+    @Test
+    public void rowsShownOfExamplesTablesAreSetByAVariable() throws IOException {
+        File featureFile = largeFeature();
+        try {
+            WikiPage parent = mock(WikiPage.class);
+            when(parent.getVariable(CucumberFeaturePage.EXAMPLE_ROWS)).thenReturn("10");
+            String html = new CucumberFeaturePage(featureFile, "large", parent).getHtml();
+            assertThat(html, containsString("<tr><td>10000</td></tr></table><details><summary>140 more rows</summary>"));
+
+            when(parent.getVariable(CucumberFeaturePage.EXAMPLE_ROWS)).thenReturn("200");
+            html = new CucumberFeaturePage(featureFile, "large", parent).getHtml();
+            assertThat(html, containsString("<tr><td>150000</td></tr></table>"));
+            assertThat(html, not(containsString("<details>")));
+        } finally {
+            featureFile.delete();
+        }
+    }
+
+    private static File largeFeature() throws IOException {
+        StringBuilder feature = new StringBuilder("Feature: large\n  Scenario Outline: square\n    Given a variable x with value <value>\n    Examples:\n      | value |\n");
+        for (int i = 1; i <= 150; i++) {
+            feature.append("      | ").append(i * 1000).append(" |\n");
+        }
+        File featureFile = File.createTempFile("large", ".feature");
+        FileUtil.createFile(featureFile, feature.toString());
+        return featureFile;
+    }
+}
@@ -0,0 +1,73 @@
+package org.fitnesse.cucumber;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Test;
+
+import gherkin.formatter.model.Result;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CucumberMetricsTest {
+    private final CucumberMetrics metrics = new CucumberMetrics();
+
+    @Test
+    public void countsPagesAndSteps() {
+        metrics.pageStarted("Suite.PageOne");
+        metrics.stepCompleted(Result.PASSED, 1000000L);
+        metrics.stepCompleted(Result.FAILED, 1000000L);
+        metrics.stepCompleted(Result.UNDEFINED.getStatus(), null);
+
+        assertThat(metrics.getPagesInFlight(), is(new String[] { "Suite.PageOne" }));
+
+        metrics.pageCompleted("Suite.PageOne", 3000000L);
+
+        assertThat(metrics.getPagesInFlight().length, is(0));
+        assertThat(metrics.getPagesRun(), is(1L));
+        assertThat(metrics.getStepsRun(), is(3L));
+        assertThat(metrics.getStepsFailed(), is(1L));
+        assertThat(metrics.getStepsUndefined(), is(1L));
+        assertThat(metrics.getStepsPerSecond(), is(1000.0));
+    }
+
+    @Test
+    public void summarizesLatencies() {
+        for (int i = 0; i < 99; i++) {
+            metrics.runtimeCreated(1000000L, 500000L);
+        }
+        metrics.runtimeCreated(100000000L, 90000000L);
+
+        CucumberMetricsMXBean.Latency latency = metrics.getRuntimeCreationDurations();
+        assertThat(latency.getCount(), is(100L));
+        assertThat(latency.getMax(), is(100.0));
+        assertThat(latency.getPercentile50(), is(1.024));
+        assertThat(latency.getPercentile99(), is(1.024));
+        assertThat(metrics.getGlueLoadDurations().getMax(), is(90.0));
+    }
+
+    @Test
+    public void aPageRunByTwoTestSystemsIsInFlightUntilBothComplete() {
+        metrics.pageStarted("Suite.PageOne");
+        metrics.pageStarted("Suite.PageOne");
+
+        metrics.pageCompleted("Suite.PageOne", 1000000L);
+        assertThat(metrics.getPagesInFlight(), is(new String[] { "Suite.PageOne" }));
+
+        metrics.pageCompleted("Suite.PageOne", 1000000L);
+        assertThat(metrics.getPagesInFlight().length, is(0));
+    }
+
+    @Test
+    public void isAvailableOverJmx() throws Exception {
+        CucumberMetrics.getInstance().register();
+        CucumberMetrics.getInstance().register();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(CucumberMetrics.OBJECT_NAME);
+        assertThat(server.getAttribute(name, "PagesRun") instanceof Long, is(true));
+        assertThat(((CompositeData) server.getAttribute(name, "PageDurations")).containsKey("percentile99"), is(true));
+    }
+}
@@ -43,6 +43,14 @@ public class CucumberPageFactoryTest {
         assertThat(children.get(0).getName(), is("SimpleFeature"));
     }
 
+    @Test
+    public void pagesAreTheSameForEveryLookup() {
+        WikiPage features = root.getChildPage("FeatureFiles");
+
+        assertThat(root.getChildPage("FeatureFiles"), sameInstance(features));
+        assertThat(root.getChildPage("FeatureFiles").getChildPage("SimpleFeature"), sameInstance(features.getChildPage("SimpleFeature")));
+    }
+
     @Test
     public void tocPageCanRender() {
         WikiPage page = root.getChildPage("FeatureFiles");
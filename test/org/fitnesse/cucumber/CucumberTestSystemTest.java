@@ -6,17 +6,23 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 import fitnesse.testrunner.WikiTestPage;
 import fitnesse.testsystems.*;
+import fitnesse.wiki.SystemVariableSource;
+import fitnesse.wiki.WikiPage;
 import util.FileUtil;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -89,10 +95,282 @@ public class CucumberTestSystemTest {
         assertThat(output, containsString("<h5>Examples: value = 2, outcome = 4</h5>"));
     }
 
+    @Test
+    public void durationsAreShown() throws IOException, InterruptedException {
+        TestSystemListener listener = testWithPage("features/substory/scenarioOutline.feature");
+        String output = concatOutput(listener);
+        assertThat(output, containsString(" ms'><span class='pass'>Given a variable x with value 2</span></span>"));
+        assertThat(output, containsString("Scenario took "));
+        assertThat(output, containsString("Feature took "));
+    }
+
+    @Test
+    public void featurePagesAreReadFromTheFeatureFile() throws IOException, InterruptedException {
+        WikiTestPage pageToTest = getWikiTestPage("features/simplefeature.feature");
+        when(pageToTest.getContent()).thenReturn("not a feature");
+        when(pageToTest.getSourcePage()).thenReturn(new CucumberFeaturePage(new File("features/simplefeature.feature"), "SimpleFeature", null));
+
+        TestSystemListener listener = testWithPage(pageToTest);
+
+        assertThat(concatOutput(listener), containsString("<span class='pass'>Then x should equal 9</span>"));
+    }
+
+    @Test
+    public void scenariosCanBeSelectedByName() throws IOException, InterruptedException {
+        WikiTestPage pageToTest = getWikiTestPage("features/simplefeature.feature");
+        when(pageToTest.getVariable(eq(ScenarioFilter.NAME))).thenReturn("^2 squared");
+
+        TestSystemListener listener = testWithPage(pageToTest);
+
+        assertThat(concatOutput(listener), not(containsString("Then x should equal 9")));
+        assertThat(concatOutput(listener), containsString("<span class='ignore'>Scenario: 3 squared</span>"));
+        assertThat(testSummary(listener), is(new TestSummary(3, 0, 1, 0)));
+    }
+
+    @Test
+    public void scenariosCanBeExcludedByTag() throws IOException, InterruptedException {
+        WikiTestPage pageToTest = getWikiTestPage("features/substory/withBefore.feature");
+        when(pageToTest.getVariable(eq(ScenarioFilter.TAGS))).thenReturn("~@withBefore");
+
+        TestSystemListener listener = testWithPage(pageToTest);
+
+        assertThat(testSummary(listener), is(new TestSummary(0, 0, 1, 0)));
+    }
+
+    @Test
+    public void examplesAreExcludedOneByOne() throws IOException, InterruptedException {
+        WikiTestPage pageToTest = getWikiTestPage("features/substory/scenarioOutline.feature");
+        when(pageToTest.getVariable(eq(ScenarioFilter.TAGS))).thenReturn("@none");
+
+        TestSystemListener listener = testWithPage(pageToTest);
+
+        assertThat(concatOutput(listener), containsString("<span class='ignore'>Scenario Outline: squared numbers (last one fails) [2, 4]</span>"));
+        assertThat(testSummary(listener), is(new TestSummary(0, 0, 4, 0)));
+    }
+
+    @Test
+    public void onlyFailedScenariosAreRerun() throws IOException, InterruptedException {
+        File historyFile = File.createTempFile("history", ".txt");
+        historyFile.delete();
+        try {
+            WikiTestPage firstRun = getWikiTestPage("features/substory/scenarioOutline.feature");
+            when(firstRun.getFullPath()).thenReturn("CucumberTestSystem.ScenarioOutline");
+            when(firstRun.getVariable(eq(CucumberTestSystem.HISTORY))).thenReturn(historyFile.getPath());
+            testWithPage(firstRun);
+
+            WikiTestPage rerun = getWikiTestPage("features/substory/scenarioOutline.feature");
+            when(rerun.getFullPath()).thenReturn("CucumberTestSystem.ScenarioOutline");
+            when(rerun.getVariable(eq(CucumberTestSystem.HISTORY))).thenReturn(historyFile.getPath());
+            when(rerun.getVariable(eq(CucumberTestSystem.RERUN))).thenReturn("failed");
+            TestSystemListener listener = testWithPage(rerun);
+
+            String output = concatOutput(listener);
+            assertThat(output, containsString("<span class='fail'>Then x should equal 10</span>"));
+            assertThat(output, not(containsString("Then x should equal 9")));
+            assertThat(output, containsString("<h4>Results of the previous run</h4>"));
+            assertThat(testSummary(listener), is(new TestSummary(11, 1, 0, 0)));
+        } finally {
+            historyFile.delete();
+            ScenarioHistory.lockFile(historyFile).delete();
+        }
+    }
+
+    @Test
+    public void unchangedFeaturesThatPassedAreNotRunAgain() throws IOException, InterruptedException {
+        File historyFile = File.createTempFile("history", ".txt");
+        historyFile.delete();
+        try {
+            testWithPage(incrementalPage("features/simplefeature.feature", historyFile));
+            TestSystemListener listener = testWithPage(incrementalPage("features/simplefeature.feature", historyFile));
+
+            assertThat(concatOutput(listener), not(containsString("<h3>Feature")));
+            assertThat(concatOutput(listener), containsString("<span class='pass'>Scenario: 3 squared</span>"));
+            assertThat(testSummary(listener), is(new TestSummary(6, 0, 0, 0)));
+        } finally {
+            historyFile.delete();
+            ScenarioHistory.lockFile(historyFile).delete();
+        }
+    }
+
+    @Test
+    public void featuresThatFailedAreRunAgain() throws IOException, InterruptedException {
+        File historyFile = File.createTempFile("history", ".txt");
+        historyFile.delete();
+        try {
+            testWithPage(incrementalPage("features/substory/scenarioOutline.feature", historyFile));
+            TestSystemListener listener = testWithPage(incrementalPage("features/substory/scenarioOutline.feature", historyFile));
+
+            assertThat(testSummary(listener), is(new TestSummary(11, 1, 0, 0)));
+        } finally {
+            historyFile.delete();
+            ScenarioHistory.lockFile(historyFile).delete();
+        }
+    }
+
+    @Test
+    public void pendingMethodsAreNotCarriedOverToTheNextPage() throws IOException, InterruptedException {
+        WikiTestPage undefinedPage = getWikiTestPage("FitNesseRoot/CucumberTestSystem/FeatureWithoutCandidateSteps/content.txt");
+        WikiTestPage passingPage = getWikiTestPage("features/simplefeature.feature");
+        TestSystemListener undefinedListener = mock(TestSystemListener.class);
+        TestSystemListener passingListener = mock(TestSystemListener.class);
+
+        CucumberTestSystem testSystem = new CucumberTestSystem("", mock(ExecutionLogListener.class), getClassLoader());
+        testSystem.start();
+        testSystem.addTestSystemListener(undefinedListener);
+        testSystem.runTests(undefinedPage);
+        testSystem.addTestSystemListener(passingListener);
+        testSystem.runTests(passingPage);
+        testSystem.bye();
+
+        assertThat(concatOutput(undefinedListener), containsString("<h3>Pending methods</h3>"));
+        assertThat(concatOutput(passingListener), not(containsString("Pending methods")));
+        assertThat(concatOutput(passingListener), containsString("<span class='pass'>Then x should equal 9</span>"));
+    }
+
+    @Test
+    public void parallelScenariosAreReportedInDocumentOrder() throws IOException, InterruptedException {
+        TestSystemListener sequentialListener = testWithPage("features/substory/scenarioOutline.feature");
+        WikiTestPage parallelPage = getWikiTestPage("features/substory/scenarioOutline.feature");
+        when(parallelPage.getVariable(eq(CucumberTestSystem.PARALLEL_SCENARIOS))).thenReturn("4");
+        TestSystemListener parallelListener = testWithPage(parallelPage);
+
+        assertThat(withoutDurations(concatOutput(parallelListener)), is(withoutDurations(concatOutput(sequentialListener))));
+        assertThat(testSummary(parallelListener), is(testSummary(sequentialListener)));
+        assertThat(testSummary(parallelListener), is(new TestSummary(11, 1, 0, 0)));
+    }
+
+    @Test
+    public void concurrentPagesAreReportedInOrder() throws IOException, InterruptedException {
+        WikiTestPage firstPage = getWikiTestPage("features/substory/scenarioOutline.feature");
+        WikiTestPage secondPage = getWikiTestPage("features/simplefeature.feature");
+        WikiTestPage thirdPage = getWikiTestPage("features/substory/withBefore.feature");
+        TestSystemListener listener = mock(TestSystemListener.class);
+
+        CucumberTestSystem testSystem = new CucumberTestSystem("", mock(ExecutionLogListener.class), getClassLoader(), 3);
+        testSystem.addTestSystemListener(listener);
+        testSystem.start();
+        testSystem.runTests(firstPage);
+        testSystem.runTests(secondPage);
+        testSystem.runTests(thirdPage);
+        testSystem.bye();
+
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).testStarted(firstPage);
+        inOrder.verify(listener).testOutputChunk(argThat(containsString("<h3>Feature: A fancy scenario outline</h3>")));
+        inOrder.verify(listener).testComplete(eq(firstPage), eq(new TestSummary(11, 1, 0, 0)));
+        inOrder.verify(listener).testStarted(secondPage);
+        inOrder.verify(listener).testOutputChunk(argThat(containsString("<h3>Feature: Example symlinked scenarios</h3>")));
+        inOrder.verify(listener).testComplete(eq(secondPage), eq(new TestSummary(6, 0, 0, 0)));
+        inOrder.verify(listener).testStarted(thirdPage);
+        inOrder.verify(listener).testComplete(eq(thirdPage), eq(new TestSummary(3, 0, 0, 0)));
+        inOrder.verify(listener).testSystemStopped(testSystem, null);
+    }
+
+    @Test
+    public void glueIsLoadedWhenTheTestSystemStarts() throws IOException {
+        long runtimesCreated = CucumberMetrics.getInstance().getRuntimesCreated();
+        TestSystemListener listener = mock(TestSystemListener.class);
+
+        CucumberTestSystem testSystem = new CucumberTestSystem("", mock(ExecutionLogListener.class), getClassLoader(), 1, "org.fitnesse.cucumber");
+        testSystem.addTestSystemListener(listener);
+        testSystem.start();
+        testSystem.runTests(getWikiTestPage("features/simplefeature.feature"));
+        testSystem.bye();
+
+        assertThat(CucumberMetrics.getInstance().getRuntimesCreated() - runtimesCreated, is(1L));
+        assertThat(testSummary(listener), is(new TestSummary(6, 0, 0, 0)));
+    }
+
+    @Test
+    public void pendingMethodsAreShownOncePerSuiteInBatchMode() throws IOException, InterruptedException {
+        WikiTestPage firstPage = getWikiTestPage("FitNesseRoot/CucumberTestSystem/FeatureWithoutCandidateSteps/content.txt");
+        when(firstPage.getVariable(eq(CucumberTestSystem.BATCH))).thenReturn("true");
+        WikiTestPage secondPage = getWikiTestPage("FitNesseRoot/CucumberTestSystem/FeatureWithoutCandidateSteps/content.txt");
+        when(secondPage.getVariable(eq(CucumberTestSystem.BATCH))).thenReturn("true");
+        TestSystemListener firstListener = mock(TestSystemListener.class);
+        TestSystemListener secondListener = mock(TestSystemListener.class);
+
+        CucumberTestSystem testSystem = new CucumberTestSystem("", mock(ExecutionLogListener.class), getClassLoader());
+        testSystem.start();
+        testSystem.addTestSystemListener(firstListener);
+        testSystem.runTests(firstPage);
+        testSystem.addTestSystemListener(secondListener);
+        testSystem.runTests(secondPage);
+        testSystem.bye();
+
+        assertThat(concatOutput(firstListener), containsString("<h3>Pending methods</h3>"));
+        assertThat(concatOutput(secondListener), containsString("<span class='error'>Undefined step: Given a situation</span>"));
+        assertThat(concatOutput(secondListener), not(containsString("Pending methods")));
+    }
+
+    @Test
+    public void pagesOfOtherShardsAreNotRun() throws IOException, InterruptedException {
+        int shard = ("features/simplefeature.feature".hashCode() & Integer.MAX_VALUE) % 2 + 1;
+        WikiTestPage pageToTest = getWikiTestPage("features/simplefeature.feature");
+        when(pageToTest.getFullPath()).thenReturn("features/simplefeature.feature");
+        when(pageToTest.getVariable(eq(CucumberTestSystem.SHARD_COUNT))).thenReturn("2");
+        when(pageToTest.getVariable(eq(CucumberTestSystem.SHARD_INDEX))).thenReturn(String.valueOf(3 - shard));
+
+        TestSystemListener listener = testWithPage(pageToTest);
+
+        assertThat(concatOutput(listener), is("<span class='ignore'>Runs in shard " + shard + " of 2</span>"));
+        assertThat(testSummary(listener), is(new TestSummary(0, 0, 0, 0)));
+    }
+
+    @Test
+    public void featuresAreKnownToShardsByTheirPathInTheFeatureDirectory() {
+        CucumberTocPage features = new CucumberTocPage(new File("features").getAbsoluteFile(), "features", null, new SystemVariableSource());
+        WikiPage substory = null;
+        for (WikiPage child : features.getChildren()) {
+            if (child instanceof CucumberTocPage) {
+                substory = child;
+            }
+        }
+        WikiPage feature = null;
+        for (WikiPage child : substory.getChildren()) {
+            if (((CucumberFeaturePage) child).getFileSystemPath().getName().equals("withAfter.feature")) {
+                feature = child;
+            }
+        }
+        WikiTestPage pageToTest = mock(WikiTestPage.class);
+        when(pageToTest.getSourcePage()).thenReturn(feature);
+
+        assertThat(CucumberTestSystem.shardKey(pageToTest), is("substory/withAfter.feature"));
+    }
+
+    @Test
+    public void scenariosThatHangAreTimedOut() throws IOException, InterruptedException {
+        WikiTestPage pageToTest = hangingPage();
+        when(pageToTest.getVariable(eq(CucumberTestSystem.SCENARIO_TIMEOUT))).thenReturn("1");
+
+        TestSystemListener listener = testWithPage(pageToTest);
+
+        assertThat(concatOutput(listener), containsString("<span class='error'>Scenario timed out after 1000 ms</span>"));
+        assertThat(concatOutput(listener), containsString("ExampleSteps.hang"));
+        assertThat(testSummary(listener), is(new TestSummary(4, 0, 0, 1)));
+    }
+
+    @Test
+    public void scenariosStillRunningAtThePageTimeoutAreTimedOut() throws IOException, InterruptedException {
+        WikiTestPage pageToTest = getWikiTestPage("features/simplefeature.feature");
+        when(pageToTest.getContent()).thenReturn("Feature: Hanging steps\n" +
+                "  Scenario: hangs\n" +
+                "    When a step that hangs\n");
+        when(pageToTest.getVariable(eq(CucumberTestSystem.PAGE_TIMEOUT))).thenReturn("1");
+
+        TestSystemListener listener = testWithPage(pageToTest);
+
+        assertThat(concatOutput(listener), containsString("<span class='error'>Page timed out after 1000 ms</span>"));
+        assertThat(testSummary(listener).getExceptions(), is(1));
+    }
+
     // Perform test execution, assume no errors happen.
     private TestSystemListener testWithPage(final String path) throws IOException, InterruptedException {
+        return testWithPage(getWikiTestPage(path));
+    }
+
+    private TestSystemListener testWithPage(final WikiTestPage pageToTest) throws IOException, InterruptedException {
         ExecutionLogListener executionLogListener = mock(ExecutionLogListener.class);
-        WikiTestPage pageToTest = getWikiTestPage(path);
         TestSystemListener listener = mock(TestSystemListener.class);
 
         CucumberTestSystem testSystem = new CucumberTestSystem("", executionLogListener, getClassLoader());
@@ -112,6 +390,27 @@ public class CucumberTestSystemTest {
     }
 
 
+    private WikiTestPage incrementalPage(String path, File historyFile) throws IOException {
+        WikiTestPage pageToTest = getWikiTestPage(path);
+        when(pageToTest.getFullPath()).thenReturn(path);
+        when(pageToTest.getVariable(eq(CucumberTestSystem.HISTORY))).thenReturn(historyFile.getPath());
+        when(pageToTest.getVariable(eq(CucumberTestSystem.INCREMENTAL))).thenReturn("true");
+        return pageToTest;
+    }
+
+    private WikiTestPage hangingPage() throws IOException {
+        WikiTestPage pageToTest = getWikiTestPage("features/simplefeature.feature");
+        when(pageToTest.getContent()).thenReturn("Feature: Hanging steps\n" +
+                "  Scenario: hangs\n" +
+                "    Given a variable x with value 2\n" +
+                "    When a step that hangs\n" +
+                "  Scenario: passes\n" +
+                "    Given a variable x with value 2\n" +
+                "    When I multiply x by 2\n" +
+                "    Then x should equal 4\n");
+        return pageToTest;
+    }
+
     protected ClassLoader getClassLoader() {
         return new URLClassLoader(new URL[] {}, Thread.currentThread().getContextClassLoader());
     }
@@ -123,6 +422,16 @@ public class CucumberTestSystemTest {
         return pageToTest;
     }
 
+    private TestSummary testSummary(final TestSystemListener listener) {
+        final ArgumentCaptor<TestSummary> captor = ArgumentCaptor.forClass(TestSummary.class);
+        verify(listener).testComplete(any(TestPage.class), captor.capture());
+        return captor.getValue();
+    }
+
+    private String withoutDurations(final String output) {
+        return output.replaceAll(" title='[^']* ms'", "").replaceAll("<span class='duration'[^>]*>[^<]*</span><br/>", "");
+    }
+
     private String concatOutput(final TestSystemListener listener) throws IOException {
         final ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
         verify(listener, atLeastOnce()).testOutputChunk(captor.capture());
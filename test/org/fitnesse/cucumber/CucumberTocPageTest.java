@@ -0,0 +1,86 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fitnesse.wiki.SystemVariableSource;
+import fitnesse.wiki.WikiPage;
+import util.FileUtil;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class CucumberTocPageTest {
+    private File directory;
+    private CucumberTocPage tocPage;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("features", "");
+        directory.delete();
+        directory.mkdir();
+        FileUtil.createFile(new File(directory, "first.feature"), "Feature: first\n");
+        directory.setLastModified(10000L);
+        tocPage = new CucumberTocPage(directory, "features", null, new SystemVariableSource());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtil.deleteFileSystemDirectory(directory);
+    }
+
+    @Test
+    public void childPagesAreStable() {
+        assertThat(tocPage.getChildPage("first"), sameInstance(tocPage.getChildPage("first")));
+        assertThat(tocPage.getChildren().get(0), sameInstance(tocPage.getChildPage("first")));
+    }
+
+    @Test
+    public void newFilesAreFoundWhenTheDirectoryChanged() throws IOException {
+        WikiPage first = tocPage.getChildPage("first");
+
+        FileUtil.createFile(new File(directory, "second.feature"), "Feature: second\n");
+        directory.setLastModified(20000L);
+
+        assertThat(tocPage.hasChildPage("second"), is(true));
+        assertThat(tocPage.getChildren().size(), is(2));
+        assertThat(tocPage.getChildPage("first"), sameInstance(first));
+    }
+
+    @Test
+    public void removedFilesAreGoneWhenTheDirectoryChanged() {
+        tocPage.getChildren();
+
+        new File(directory, "first.feature").delete();
+        directory.setLastModified(20000L);
+
+        assertThat(tocPage.hasChildPage("first"), is(false));
+        assertThat(tocPage.getChildren().isEmpty(), is(true));
+    }
+
+    @Test
+    public void filesAddedWithinTheSameSecondAreFound() throws IOException {
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        directory.setLastModified(now);
+        tocPage.getChildren();
+
+        FileUtil.createFile(new File(directory, "second.feature"), "Feature: second\n");
+        directory.setLastModified(now);
+
+        assertThat(tocPage.hasChildPage("second"), is(true));
+    }
+
+    @Test
+    public void pagesWithTheSameNameAreAllListed() throws IOException {
+        FileUtil.createFile(new File(directory, "first.v2.feature"), "Feature: first, again\n");
+        new File(directory, "first").mkdir();
+        directory.setLastModified(20000L);
+
+        assertThat(tocPage.getChildren().size(), is(3));
+        assertThat(tocPage.hasChildPage("first"), is(true));
+    }
+}
@@ -0,0 +1,98 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fitnesse.testsystems.TestSummary;
+import util.FileUtil;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class EmbeddingStoreTest {
+    private File root;
+    private File dir;
+    private final StringBuilder output = new StringBuilder();
+    private final StringBuilder errors = new StringBuilder();
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("embeddings", "");
+        root.delete();
+        dir = new File(root, "FitNesseRoot/files/embeddings");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtil.deleteFileSystemDirectory(root);
+    }
+
+    @Test
+    public void identicalAttachmentsAreStoredOnce() throws IOException, InterruptedException {
+        EmbeddingStore store = new EmbeddingStore(dir, null);
+
+        String first = store.store("image/png", "screenshot".getBytes(StandardCharsets.UTF_8), printer(errors));
+        String second = store.store("image/png", "screenshot".getBytes(StandardCharsets.UTF_8), printer(errors));
+        EmbeddingStore.awaitWrites();
+
+        assertThat(second, is(first));
+        assertThat(first, startsWith("/files/embeddings/"));
+        assertThat(first, endsWith(".png"));
+        assertThat(dir.list().length, is(1));
+        assertThat(FileUtil.getFileContent(new File(dir, first.substring(first.lastIndexOf('/') + 1))), is("screenshot"));
+        assertThat(errors.toString(), is(""));
+    }
+
+    @Test
+    public void attachmentsRemovedFromTheDirectoryAreWrittenAgain() throws IOException, InterruptedException {
+        EmbeddingStore store = new EmbeddingStore(dir, null);
+        store.store("text/plain", "log".getBytes(StandardCharsets.UTF_8), printer(errors));
+        EmbeddingStore.awaitWrites();
+        FileUtil.deleteFileSystemDirectory(dir);
+
+        store.store("text/plain", "log".getBytes(StandardCharsets.UTF_8), printer(errors));
+        EmbeddingStore.awaitWrites();
+
+        assertThat(dir.list().length, is(1));
+    }
+
+    @Test
+    public void imagesAreLinkedAsLazyThumbnails() throws InterruptedException {
+        FitNesseResultFormatter formatter = new FitNesseResultFormatter(new TestSummary(), printer(output), printer(errors));
+        formatter.setEmbeddings(new EmbeddingStore(dir, "/embeddings/"));
+
+        formatter.embedding("image/png", new byte[]{1, 2, 3});
+        formatter.embedding("text/plain", new byte[]{4, 5});
+        EmbeddingStore.awaitWrites();
+
+        assertThat(output.toString(), containsString("<img src='/embeddings/"));
+        assertThat(output.toString(), containsString(".png' loading='lazy'"));
+        assertThat(output.toString(), containsString(".txt' target='_blank'>text/plain, 2 bytes</a>"));
+        assertThat(dir.list().length, is(2));
+    }
+
+    @Test
+    public void attachmentsAreLeftOutWithoutAStore() {
+        FitNesseResultFormatter formatter = new FitNesseResultFormatter(new TestSummary(), printer(output), printer(errors));
+
+        formatter.embedding("image/png", new byte[]{1, 2, 3});
+
+        assertThat(output.toString(), is(""));
+    }
+
+    private static Printer printer(final StringBuilder text) {
+        return new Printer() {
+            @Override
+            public void write(String s) {
+                text.append(s);
+            }
+        };
+    }
+}
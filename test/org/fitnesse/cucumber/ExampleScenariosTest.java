@@ -0,0 +1,54 @@
+package org.fitnesse.cucumber;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import cucumber.runtime.FeatureBuilder;
+import cucumber.runtime.model.CucumberExamples;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberScenario;
+import cucumber.runtime.model.CucumberScenarioOutline;
+import gherkin.formatter.model.ExamplesTableRow;
+import gherkin.formatter.model.Step;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ExampleScenariosTest {
+
+    @Test
+    public void scenarioOfARowIsTheOneCucumberCreates() {
+        List<CucumberFeature> cucumberFeatures = new ArrayList<>();
+        new FeatureCache(1).get("Feature: f\n"
+                + "  @outline\n"
+                + "  Scenario Outline: add <a>\n"
+                + "    Given <a> plus <b>\n"
+                + "  @examples\n"
+                + "  Examples:\n"
+                + "    | a | b |\n"
+                + "    | 1 | 2 |\n"
+                + "    | 3 | 4 |\n").replay(new FeatureBuilder(cucumberFeatures));
+        CucumberScenarioOutline outline = (CucumberScenarioOutline) cucumberFeatures.get(0).getFeatureElements().get(0);
+        CucumberExamples examples = outline.getCucumberExamplesList().get(0);
+        List<ExamplesTableRow> rows = examples.getExamples().getRows();
+        List<CucumberScenario> expected = examples.createExampleScenarios();
+
+        for (int i = 1; i < rows.size(); i++) {
+            CucumberScenario scenario = ExampleScenarios.scenario(outline, examples, rows.get(i));
+
+            assertThat(scenario.getVisualName(), is(expected.get(i - 1).getVisualName()));
+            assertThat(scenario.getGherkinModel().getLine(), is(rows.get(i).getLine()));
+            assertThat(scenario.getGherkinModel().getTags().size(), is(2));
+            assertThat(names(scenario.getSteps()), is(names(expected.get(i - 1).getSteps())));
+        }
+    }
+
+    private static List<String> names(List<Step> steps) {
+        List<String> names = new ArrayList<>();
+        for (Step step : steps) {
+            names.add(step.getName());
+        }
+        return names;
+    }
+}
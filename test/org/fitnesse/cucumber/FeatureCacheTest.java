@@ -0,0 +1,129 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import cucumber.runtime.FeatureBuilder;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberScenarioOutline;
+import gherkin.formatter.FilterFormatter;
+import gherkin.parser.ParseError;
+import util.FileUtil;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class FeatureCacheTest {
+
+    private final FeatureCache featureCache = new FeatureCache(2);
+
+    @Test
+    public void unchangedFeatureIsParsedOnce() throws IOException {
+        String content = FileUtil.getFileContent(new File("features/simplefeature.feature"));
+
+        assertThat(featureCache.get(content), sameInstance(featureCache.get(new String(content))));
+    }
+
+    @Test
+    public void changedFeatureIsParsedAgain() throws IOException {
+        String content = FileUtil.getFileContent(new File("features/simplefeature.feature"));
+
+        assertThat(featureCache.get(content), not(sameInstance(featureCache.get(content + "\n"))));
+    }
+
+    @Test
+    public void unchangedFeatureFileIsParsedOnce() throws IOException {
+        File featureFile = new File("features/simplefeature.feature");
+
+        assertThat(featureCache.get(featureFile), sameInstance(featureCache.get(featureFile)));
+    }
+
+    @Test
+    public void featureFileSharesTheParseOfItsContent() throws IOException {
+        File featureFile = new File("features/simplefeature.feature");
+
+        assertThat(featureCache.get(featureFile), sameInstance(featureCache.get(FileUtil.getFileContent(featureFile))));
+    }
+
+    @Test
+    public void featureFileEditedWithinTheSameSecondIsParsedAgain() throws IOException {
+        File featureFile = File.createTempFile("edited", ".feature");
+        try {
+            long lastModified = System.currentTimeMillis() / 1000 * 1000;
+            FileUtil.createFile(featureFile, "Feature: a\n");
+            featureFile.setLastModified(lastModified);
+            ParsedFeature first = featureCache.get(featureFile);
+
+            FileUtil.createFile(featureFile, "Feature: b\n");
+            featureFile.setLastModified(lastModified);
+
+            assertThat(featureCache.get(featureFile), not(sameInstance(first)));
+        } finally {
+            featureFile.delete();
+        }
+    }
+
+    @Test
+    public void nonAsciiContentIsChecksummed() {
+        String content = "Feature: caf\u00e9\n";
+
+        assertThat(featureCache.get(content), sameInstance(featureCache.get(new String(content))));
+        assertThat(featureCache.get(content), not(sameInstance(featureCache.get("Feature: cafe\n"))));
+    }
+
+    @Test
+    public void leastRecentlyUsedFeatureIsEvicted() throws IOException {
+        String content = FileUtil.getFileContent(new File("features/simplefeature.feature"));
+        ParsedFeature feature = featureCache.get(content);
+        featureCache.get(content + "\n");
+        featureCache.get(content + "\n\n");
+
+        assertThat(featureCache.get(content), not(sameInstance(feature)));
+    }
+
+    @Test
+    public void parsedFeatureCanBeReplayedToAFeatureBuilder() throws IOException {
+        ParsedFeature feature = featureCache.get(FileUtil.getFileContent(new File("features/substory/scenarioOutline.feature")));
+        List<CucumberFeature> cucumberFeatures = new ArrayList<>();
+
+        feature.replay(new FeatureBuilder(cucumberFeatures));
+
+        assertThat(cucumberFeatures.size(), is(1));
+        assertThat(cucumberFeatures.get(0).getFeatureElements().size(), is(2));
+    }
+
+    @Test
+    public void filteringAReplayLeavesTheParsedFeatureIntact() throws IOException {
+        ParsedFeature feature = featureCache.get(FileUtil.getFileContent(new File("features/substory/scenarioOutline.feature")));
+        List<CucumberFeature> filtered = new ArrayList<>();
+        List<CucumberFeature> unfiltered = new ArrayList<>();
+
+        feature.replay(new FilterFormatter(new FeatureBuilder(filtered), Arrays.asList(12L)));
+        feature.replay(new FeatureBuilder(unfiltered));
+
+        assertThat(exampleRows(filtered), is(2));
+        assertThat(exampleRows(unfiltered), is(4));
+    }
+
+    @Test(expected = ParseError.class)
+    public void parseErrorIsRaisedOnEveryReplay() throws IOException {
+        ParsedFeature feature = featureCache.get(FileUtil.getFileContent(new File("features/substory/syntaxError.feature")));
+        try {
+            feature.replay(new FeatureBuilder(new ArrayList<CucumberFeature>()));
+        } catch (ParseError e) {
+            // expected
+        }
+        feature.replay(new FeatureBuilder(new ArrayList<CucumberFeature>()));
+    }
+
+    private static int exampleRows(List<CucumberFeature> cucumberFeatures) {
+        CucumberScenarioOutline outline = (CucumberScenarioOutline) cucumberFeatures.get(0).getFeatureElements().get(0);
+        return outline.getCucumberExamplesList().get(0).getExamples().getRows().size();
+    }
+}
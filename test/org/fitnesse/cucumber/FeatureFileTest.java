@@ -0,0 +1,61 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class FeatureFileTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("content", ".feature");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void readsUtf8() throws IOException {
+        write("Feature: Caf\u00e9 cr\u00e8me");
+
+        assertThat(FeatureFile.read(file), is("Feature: Caf\u00e9 cr\u00e8me"));
+    }
+
+    @Test
+    public void readsChangedFileAgain() throws IOException {
+        write("Feature: first");
+        file.setLastModified(10000L);
+        FeatureFile.read(file);
+
+        write("Feature: second");
+        file.setLastModified(20000L);
+
+        assertThat(FeatureFile.read(file), is("Feature: second"));
+    }
+
+    @Test
+    public void readsLargeFiles() throws IOException {
+        StringBuilder content = new StringBuilder("Feature: large\n");
+        while (content.length() < 2 * 1024 * 1024) {
+            content.append("  Scenario: \u00e9t\u00e9\n");
+        }
+        write(content.toString());
+
+        assertThat(FeatureFile.read(file), is(content.toString()));
+    }
+
+    private void write(String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes("UTF-8"));
+        }
+    }
+}
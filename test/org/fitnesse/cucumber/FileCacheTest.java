@@ -0,0 +1,50 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class FileCacheTest {
+
+    private final File first = new File("first.feature");
+    private final File second = new File("second.feature");
+
+    @Test
+    public void textIsCachedForUnchangedFile() {
+        FileCache fileCache = new FileCache(1024);
+        fileCache.put(first, 1L, 10L, "<h3>first</h3>");
+
+        assertThat(fileCache.get(first, 1L, 10L), is("<h3>first</h3>"));
+    }
+
+    @Test
+    public void textIsDroppedWhenFileChanged() {
+        FileCache fileCache = new FileCache(1024);
+        fileCache.put(first, 1L, 10L, "<h3>first</h3>");
+
+        assertThat(fileCache.get(first, 2L, 10L), is(nullValue()));
+        assertThat(fileCache.get(first, 1L, 10L), is(nullValue()));
+    }
+
+    @Test
+    public void textOfAFileThatHasJustBeenModifiedIsNotServed() {
+        FileCache fileCache = new FileCache(1024);
+        long lastModified = System.currentTimeMillis() / 1000 * 1000;
+        fileCache.put(first, lastModified, 10L, "<h3>first</h3>");
+
+        assertThat(fileCache.get(first, lastModified, 10L), is(nullValue()));
+    }
+
+    @Test
+    public void leastRecentlyUsedTextIsEvictedWhenOverBudget() {
+        FileCache fileCache = new FileCache(40);
+        fileCache.put(first, 1L, 10L, "<h3>first</h3>");
+        fileCache.put(second, 1L, 10L, "<h3>second</h3>");
+
+        assertThat(fileCache.get(first, 1L, 10L), is(nullValue()));
+        assertThat(fileCache.get(second, 1L, 10L), is("<h3>second</h3>"));
+    }
+}
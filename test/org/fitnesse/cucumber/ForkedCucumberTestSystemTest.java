@@ -0,0 +1,111 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import fitnesse.testsystems.ExecutionLogListener;
+import fitnesse.testsystems.TestPage;
+import fitnesse.testsystems.TestSummary;
+import fitnesse.testsystems.TestSystemListener;
+import util.FileUtil;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ForkedCucumberTestSystemTest {
+    private static final List<String> NO_JVM_ARGS = Collections.emptyList();
+
+    private final WorkerPool workerPool = new WorkerPool();
+
+    @Test
+    public void pagesRunInAWorker() throws IOException {
+        TestPage page = page("features/simplefeature.feature");
+        TestSystemListener listener = run(new ForkedCucumberTestSystem("", mock(ExecutionLogListener.class), workerPool,
+                Collections.<String>emptyList(), NO_JVM_ARGS, 1, 0, 0), page);
+
+        assertThat(concatOutput(listener), containsString("<h3>Feature: Example symlinked scenarios</h3>"));
+        verify(listener).testComplete(page, new TestSummary(6, 0, 0, 0));
+        assertThat(workerPool.idleCount(), is(1));
+    }
+
+    @Test
+    public void workersAreReplacedAfterTheirMaximumNumberOfPages() throws IOException {
+        TestPage firstPage = page("features/simplefeature.feature");
+        TestPage secondPage = page("features/substory/scenarioOutline.feature");
+        TestSystemListener listener = run(new ForkedCucumberTestSystem("", mock(ExecutionLogListener.class), workerPool,
+                Collections.<String>emptyList(), NO_JVM_ARGS, 1, 1, 0), firstPage, secondPage);
+
+        verify(listener).testComplete(firstPage, new TestSummary(6, 0, 0, 0));
+        verify(listener).testComplete(secondPage, new TestSummary(11, 1, 0, 0));
+        assertThat(workerPool.idleCount(), is(0));
+    }
+
+    @Test
+    public void pagesFailWhenTheWorkerDoesNotStart() throws IOException {
+        TestPage page = page("features/simplefeature.feature");
+        TestSystemListener listener = run(new ForkedCucumberTestSystem("", mock(ExecutionLogListener.class), workerPool,
+                Collections.<String>emptyList(), Collections.singletonList("-XX:NoSuchOption"), 1, 0, 0), page);
+
+        assertThat(concatOutput(listener), containsString("<span class='error'>Test execution failed: worker JVM stopped</span>"));
+        verify(listener).testComplete(page, new TestSummary(0, 0, 0, 1));
+        assertThat(workerPool.idleCount(), is(0));
+    }
+
+    @Test
+    public void workersThatDoNotCompleteAPageInTimeAreStopped() throws IOException {
+        WorkerPool.Worker worker = new WorkerPool.Worker(Arrays.asList("sleep", "60"), "", "", 0, 0);
+        long start = System.nanoTime();
+
+        try {
+            worker.run(page("features/simplefeature.feature"), mock(TestSystemListener.class), mock(ExecutionLogListener.class), 1000);
+            fail("worker completed the page");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("page did not complete within 1s, worker JVM stopped"));
+        }
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10, is(true));
+        assertThat(worker.isAlive(), is(false));
+    }
+
+    private TestSystemListener run(ForkedCucumberTestSystem testSystem, TestPage... pages) {
+        TestSystemListener listener = mock(TestSystemListener.class);
+        testSystem.addTestSystemListener(listener);
+        testSystem.start();
+        for (TestPage page : pages) {
+            testSystem.runTests(page);
+        }
+        testSystem.bye();
+        verify(listener).testSystemStopped(testSystem, null);
+        return listener;
+    }
+
+    private TestPage page(String path) throws IOException {
+        TestPage page = mock(TestPage.class);
+        when(page.getFullPath()).thenReturn(path);
+        when(page.getContent()).thenReturn(FileUtil.getFileContent(new File(path)));
+        when(page.getVariable(eq("cucumber.glue"))).thenReturn("org.fitnesse.cucumber");
+        return page;
+    }
+
+    private String concatOutput(TestSystemListener listener) {
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(listener, atLeastOnce()).testOutputChunk(captor.capture());
+        StringBuilder output = new StringBuilder();
+        for (String chunk : captor.getAllValues()) {
+            output.append(chunk);
+        }
+        return output.toString();
+    }
+}
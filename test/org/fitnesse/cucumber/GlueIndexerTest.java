@@ -0,0 +1,19 @@
+package org.fitnesse.cucumber;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class GlueIndexerTest {
+
+    @Test
+    public void classWithStepDefinitionsIsGlue() {
+        assertThat(GlueIndexer.isGlue(ExampleSteps.class), is(true));
+    }
+
+    @Test
+    public void classWithoutStepDefinitionsIsNoGlue() {
+        assertThat(GlueIndexer.isGlue(GlueIndexerTest.class), is(false));
+    }
+}
@@ -0,0 +1,31 @@
+package org.fitnesse.cucumber;
+
+import org.junit.Test;
+
+import fitnesse.html.HtmlUtil;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HtmlTest {
+
+    @Test
+    public void escapesLikeFitNesse() {
+        String text = "a < b && c > d, \"quoted\" 'text'";
+
+        assertThat(Html.escape(new StringBuilder("<p>"), text).toString(), is("<p>" + HtmlUtil.escapeHTML(text)));
+    }
+
+    @Test
+    public void textWithoutSpecialCharactersIsAppendedAsIs() {
+        assertThat(Html.escape(new StringBuilder(), "Given a variable x with value 2").toString(), is("Given a variable x with value 2"));
+    }
+
+    @Test
+    public void durationsAreRoundedToATenthOfAMillisecond() {
+        assertThat(Html.duration(new StringBuilder(), 1234567L).toString(), is("1.2 ms"));
+        assertThat(Html.duration(new StringBuilder(), 1250000L).toString(), is("1.3 ms"));
+        assertThat(Html.duration(new StringBuilder(), 40000L).toString(), is("0.0 ms"));
+        assertThat(Html.duration(new StringBuilder(), 12345678901L).toString(), is("12345.7 ms"));
+    }
+}
@@ -0,0 +1,108 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+import cucumber.runtime.io.Resource;
+import cucumber.runtime.io.ResourceLoader;
+import util.FileUtil;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IndexedResourceLoaderTest {
+
+    private final ResourceLoader scanningLoader = mock(ResourceLoader.class);
+    private final IndexedResourceLoader resourceLoader = new IndexedResourceLoader(scanningLoader,
+            getClass().getClassLoader(), Collections.singletonMap(stepsRoot(), asList("org.fitnesse.cucumber.ExampleSteps")));
+    private File dir;
+
+    @After
+    public void tearDown() throws IOException {
+        if (dir != null) {
+            FileUtil.deleteFileSystemDirectory(dir);
+        }
+    }
+
+    @Test
+    public void indexedPackageIsNotScanned() {
+        List<String> classNames = classNames(resourceLoader.resources("classpath:org/fitnesse/cucumber", ".class"));
+
+        assertThat(classNames, hasItem("org.fitnesse.cucumber.ExampleSteps"));
+        verify(scanningLoader, never()).resources("classpath:org/fitnesse/cucumber", ".class");
+    }
+
+    @Test
+    public void classPathElementsWithoutAnIndexAreScanned() {
+        List<String> classNames = classNames(resourceLoader.resources("classpath:org/fitnesse/cucumber", ".class"));
+
+        assertThat(classNames, hasItem("org.fitnesse.cucumber.CucumberTestSystem"));
+        assertThat(classNames, hasItem("org.fitnesse.cucumber.IndexedResourceLoaderTest"));
+    }
+
+    @Test
+    public void parentOfIndexedPackageIsLookedUpInTheIndex() {
+        List<String> classNames = classNames(resourceLoader.resources("classpath:org/fitnesse", ".class"));
+
+        assertThat(classNames, hasItem("org.fitnesse.cucumber.ExampleSteps"));
+    }
+
+    @Test
+    public void indexOlderThanTheClassesIsNotUsed() throws IOException {
+        dir = File.createTempFile("classes", "");
+        dir.delete();
+        File index = new File(dir, GlueIndexer.INDEX_LOCATION);
+        index.getParentFile().mkdirs();
+        new File(dir, "org/example").mkdirs();
+        FileUtil.createFile(index, "org.example.Steps\n");
+        index.setLastModified(10000L);
+        FileUtil.createFile(new File(dir, "org/example/Steps.class"), "");
+        URLClassLoader classLoader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, null);
+
+        assertThat(IndexedResourceLoader.readIndexes(classLoader).isEmpty(), is(true));
+
+        index.setLastModified(System.currentTimeMillis() + 60000L);
+        assertThat(IndexedResourceLoader.readIndexes(classLoader).get(dir.toURI().toURL().toExternalForm()),
+                is(asList("org.example.Steps")));
+    }
+
+    @Test
+    public void otherPackagesAreScanned() {
+        Iterable<Resource> scanned = Collections.emptyList();
+        when(scanningLoader.resources("classpath:cucumber/runtime", ".class")).thenReturn(scanned);
+
+        assertThat(resourceLoader.resources("classpath:cucumber/runtime", ".class"), sameInstance(scanned));
+    }
+
+    @Test
+    public void indexIsReadFromTheClassPath() {
+        assertThat(IndexedResourceLoader.readIndexes(getClass().getClassLoader()).get(stepsRoot()), hasItem("org.fitnesse.cucumber.ExampleSteps"));
+    }
+
+    private static String stepsRoot() {
+        String path = "org/fitnesse/cucumber/ExampleSteps.class";
+        return IndexedResourceLoader.root(IndexedResourceLoaderTest.class.getClassLoader().getResource(path).toExternalForm(), path);
+    }
+
+    private static List<String> classNames(Iterable<Resource> resources) {
+        List<String> classNames = new ArrayList<>();
+        for (Resource resource : resources) {
+            classNames.add(resource.getClassName(".class"));
+        }
+        return classNames;
+    }
+}
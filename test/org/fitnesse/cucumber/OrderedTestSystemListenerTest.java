@@ -0,0 +1,75 @@
+package org.fitnesse.cucumber;
+
+import fitnesse.testsystems.TestPage;
+import fitnesse.testsystems.TestSummary;
+import fitnesse.testsystems.TestSystemListener;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class OrderedTestSystemListenerTest {
+
+    private final TestSystemListener listener = mock(TestSystemListener.class);
+    private final OrderedTestSystemListener orderedListener = new OrderedTestSystemListener(listener);
+    private final TestPage firstPage = mock(TestPage.class);
+    private final TestPage secondPage = mock(TestPage.class);
+    private final TestSummary testSummary = new TestSummary();
+
+    @Test
+    public void eventsOfTheFirstPageArePassedOnDirectly() {
+        TestSystemListener first = orderedListener.nextPage();
+        orderedListener.nextPage();
+
+        first.testStarted(firstPage);
+        first.testOutputChunk("first");
+
+        verify(listener).testStarted(firstPage);
+        verify(listener).testOutputChunk("first");
+    }
+
+    @Test
+    public void eventsOfLaterPagesAreHeldBackUntilEarlierPagesAreComplete() {
+        TestSystemListener first = orderedListener.nextPage();
+        TestSystemListener second = orderedListener.nextPage();
+
+        second.testStarted(secondPage);
+        second.testOutputChunk("second");
+        first.testStarted(firstPage);
+        first.testOutputChunk("first");
+
+        verify(listener, never()).testStarted(secondPage);
+        verify(listener, never()).testOutputChunk("second");
+
+        first.testComplete(firstPage, testSummary);
+        second.testComplete(secondPage, testSummary);
+
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).testStarted(firstPage);
+        inOrder.verify(listener).testOutputChunk("first");
+        inOrder.verify(listener).testComplete(firstPage, testSummary);
+        inOrder.verify(listener).testStarted(secondPage);
+        inOrder.verify(listener).testOutputChunk("second");
+        inOrder.verify(listener).testComplete(secondPage, testSummary);
+    }
+
+    @Test
+    public void pagesCompletedOutOfOrderAreReportedInOrder() {
+        TestSystemListener first = orderedListener.nextPage();
+        TestSystemListener second = orderedListener.nextPage();
+
+        second.testStarted(secondPage);
+        second.testComplete(secondPage, testSummary);
+        first.testStarted(firstPage);
+        first.testComplete(firstPage, testSummary);
+
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).testStarted(firstPage);
+        inOrder.verify(listener).testComplete(firstPage, testSummary);
+        inOrder.verify(listener).testStarted(secondPage);
+        inOrder.verify(listener).testComplete(secondPage, testSummary);
+    }
+}
@@ -0,0 +1,66 @@
+package org.fitnesse.cucumber;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import cucumber.runtime.Runtime;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class RuntimeCacheTest {
+
+    private final RuntimeCache runtimeCache = new RuntimeCache(Thread.currentThread().getContextClassLoader());
+
+    @Test
+    public void releasedRuntimeIsReusedForTheSameGluePath() {
+        Runtime runtime = runtimeCache.acquire("org.fitnesse.cucumber");
+        runtimeCache.release("org.fitnesse.cucumber", runtime);
+
+        assertThat(runtimeCache.acquire("org.fitnesse.cucumber"), sameInstance(runtime));
+    }
+
+    @Test
+    public void runtimeInUseIsNotHandedOutTwice() {
+        Runtime runtime = runtimeCache.acquire("org.fitnesse.cucumber");
+
+        assertThat(runtimeCache.acquire("org.fitnesse.cucumber"), not(sameInstance(runtime)));
+    }
+
+    @Test
+    public void runtimesAreNotSharedBetweenGluePaths() {
+        Runtime runtime = runtimeCache.acquire("org.fitnesse.cucumber");
+        runtimeCache.release("org.fitnesse.cucumber", runtime);
+
+        assertThat(runtimeCache.acquire("org.fitnesse"), not(sameInstance(runtime)));
+    }
+
+    @Test
+    public void releasingResetsErrors() {
+        Runtime runtime = runtimeCache.acquire("org.fitnesse.cucumber");
+        runtime.addError(new RuntimeException("failure"));
+        runtimeCache.release("org.fitnesse.cucumber", runtime);
+
+        assertThat(runtime.getErrors().isEmpty(), is(true));
+    }
+
+    @Test
+    public void releasingResetsTheScenariosKeptForTheSummary() throws Exception {
+        Runtime runtime = runtimeCache.acquire("org.fitnesse.cucumber");
+        Field statsField = Runtime.class.getDeclaredField("stats");
+        statsField.setAccessible(true);
+        Object stats = statsField.get(runtime);
+        Method addScenario = stats.getClass().getMethod("addScenario", String.class, String.class);
+        addScenario.setAccessible(true);
+        addScenario.invoke(stats, "passed", "Scenario: 2 squared");
+        runtimeCache.release("org.fitnesse.cucumber", runtime);
+
+        Field passedScenarios = stats.getClass().getDeclaredField("passedScenarios");
+        passedScenarios.setAccessible(true);
+        assertThat(((List<?>) passedScenarios.get(stats)).isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,162 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fitnesse.testsystems.ExecutionResult;
+import fitnesse.testsystems.TestSummary;
+import util.FileUtil;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ScenarioHistoryTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("history", ".txt");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        ScenarioHistory.lockFile(file).delete();
+    }
+
+    @Test
+    public void outcomesAreKeptInAFile() throws IOException {
+        new ScenarioHistory(file).update("features/a.feature", outcomes(3, ExecutionResult.PASS, 8, ExecutionResult.FAIL), false);
+
+        Map<Integer, ScenarioHistory.Outcome> outcomes = new ScenarioHistory(file).get("features/a.feature");
+
+        assertThat(outcomes.size(), is(2));
+        assertThat(outcomes.get(3).result, is(ExecutionResult.PASS));
+        assertThat(outcomes.get(8).isFailed(), is(true));
+        assertThat(outcomes.get(8).name, is("Scenario: line 8"));
+    }
+
+    @Test
+    public void unknownFeatureHasNoHistory() throws IOException {
+        assertThat(new ScenarioHistory(file).get("features/a.feature"), is(nullValue()));
+    }
+
+    @Test
+    public void rerunOutcomesAreMerged() throws IOException {
+        ScenarioHistory history = new ScenarioHistory(file);
+        history.update("features/a.feature", outcomes(3, ExecutionResult.PASS, 8, ExecutionResult.FAIL), false);
+
+        history.update("features/a.feature", outcomes(8, ExecutionResult.PASS), true);
+
+        assertThat(history.get("features/a.feature").size(), is(2));
+        assertThat(history.get("features/a.feature").get(8).isFailed(), is(false));
+    }
+
+    @Test
+    public void fullRunReplacesOutcomes() throws IOException {
+        ScenarioHistory history = new ScenarioHistory(file);
+        history.update("features/a.feature", outcomes(3, ExecutionResult.PASS, 8, ExecutionResult.FAIL), false);
+
+        history.update("features/a.feature", outcomes(8, ExecutionResult.PASS), false);
+
+        assertThat(history.get("features/a.feature").size(), is(1));
+    }
+
+    @Test
+    public void fingerprintsAreKeptInAFile() throws IOException {
+        ScenarioHistory history = new ScenarioHistory(file);
+        history.update("features/a.feature", outcomes(3, ExecutionResult.PASS), false);
+        history.setFingerprint("features/a.feature", "0123abcd");
+
+        assertThat(new ScenarioHistory(file).getFingerprint("features/a.feature"), is("0123abcd"));
+        assertThat(new ScenarioHistory(file).get("features/a.feature").size(), is(1));
+
+        history.setFingerprint("features/a.feature", null);
+
+        assertThat(new ScenarioHistory(file).getFingerprint("features/a.feature"), is(nullValue()));
+    }
+
+    @Test
+    public void stepCountsAreKept() throws IOException {
+        Map<Integer, ScenarioHistory.Outcome> outcomes = new HashMap<>();
+        outcomes.put(3, new ScenarioHistory.Outcome(ExecutionResult.FAIL, "Scenario: 3", new TestSummary(2, 1, 0, 0)));
+        new ScenarioHistory(file).update("features/a.feature", outcomes, false);
+
+        assertThat(new ScenarioHistory(file).get("features/a.feature").get(3).counts, is(new TestSummary(2, 1, 0, 0)));
+    }
+
+    @Test
+    public void changesToTheFileArePickedUp() throws IOException, InterruptedException {
+        ScenarioHistory history = new ScenarioHistory(file);
+        history.update("features/a.feature", outcomes(3, ExecutionResult.FAIL), false);
+
+        new ScenarioHistory(file).update("features/b.feature", outcomes(5, ExecutionResult.PASS), false);
+        assertThat(history.get("features/b.feature").size(), is(1));
+
+        file.delete();
+        assertThat(history.get("features/a.feature"), is(nullValue()));
+    }
+
+    @Test
+    public void theFileIsCompactedOnceMostOfItIsOverridden() throws IOException {
+        ScenarioHistory history = new ScenarioHistory(file);
+        for (int i = 0; i < 1000; i++) {
+            history.update("features/a.feature", outcomes(3, ExecutionResult.PASS), false);
+        }
+
+        assertThat(FileUtil.getFileContent(file).split("\n").length < 100, is(true));
+        assertThat(new ScenarioHistory(file).get("features/a.feature").size(), is(1));
+    }
+
+    @Test
+    public void historiesOfTheSameFileKeepEachOthersOutcomes() throws Exception {
+        final ScenarioHistory[] workers = {new ScenarioHistory(file), new ScenarioHistory(file), new ScenarioHistory(file)};
+        Thread[] threads = new Thread[workers.length];
+        final Exception[] failure = new Exception[1];
+        for (int i = 0; i < workers.length; i++) {
+            final int worker = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int feature = 0; feature < 50; feature++) {
+                            workers[worker].update("features/" + worker + "-" + feature + ".feature", outcomes(3, ExecutionResult.PASS), false);
+                            workers[worker].update("features/shared.feature", outcomes(worker * 100 + feature, ExecutionResult.PASS), true);
+                        }
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(failure[0], is(nullValue()));
+        ScenarioHistory history = new ScenarioHistory(file);
+        for (int worker = 0; worker < workers.length; worker++) {
+            for (int feature = 0; feature < 50; feature++) {
+                assertThat(history.get("features/" + worker + "-" + feature + ".feature").size(), is(1));
+            }
+        }
+        assertThat(history.get("features/shared.feature").size(), is(150));
+    }
+
+    private static Map<Integer, ScenarioHistory.Outcome> outcomes(Object... linesAndResults) {
+        Map<Integer, ScenarioHistory.Outcome> outcomes = new HashMap<>();
+        for (int i = 0; i < linesAndResults.length; i += 2) {
+            Integer line = (Integer) linesAndResults[i];
+            outcomes.put(line, new ScenarioHistory.Outcome((ExecutionResult) linesAndResults[i + 1], "Scenario: line " + line));
+        }
+        return outcomes;
+    }
+}
@@ -0,0 +1,67 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import util.FileUtil;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ShardPlanTest {
+
+    @Test
+    public void longestFeaturesAreSpreadFirst() {
+        Map<String, Long> durations = new HashMap<>();
+        durations.put("a.feature", 70L);
+        durations.put("b.feature", 50L);
+        durations.put("c.feature", 40L);
+        durations.put("d.feature", 30L);
+        durations.put("e.feature", 10L);
+
+        ShardPlan plan = new ShardPlan(durations, 2);
+
+        assertThat(plan.shardOf("a.feature"), is(0));
+        assertThat(plan.shardOf("b.feature"), is(1));
+        assertThat(plan.shardOf("c.feature"), is(1));
+        assertThat(plan.shardOf("d.feature"), is(0));
+        assertThat(plan.shardOf("e.feature"), is(1));
+        assertThat(plan.load(0), is(100L));
+        assertThat(plan.load(1), is(100L));
+    }
+
+    @Test
+    public void planIsMadeOnceForADurationsFile() throws IOException {
+        File durations = File.createTempFile("durations", ".tsv");
+        try {
+            FileUtil.createFile(durations, "a.feature\t70\nb.feature\t50\n");
+
+            ShardPlan plan = ShardPlan.forFile(durations, 2);
+
+            assertThat(ShardPlan.forFile(durations, 2), sameInstance(plan));
+            assertThat(plan.load(0), is(70L));
+            FileUtil.createFile(durations, "a.feature\t70\nb.feature\t50\nc.feature\t30\n");
+            assertThat(ShardPlan.forFile(durations, 2).load(1), is(80L));
+        } finally {
+            durations.delete();
+        }
+    }
+
+    @Test
+    public void missingDurationsFileHasNoDurations() throws IOException {
+        ShardPlan plan = ShardPlan.forFile(new File("no-such-durations.tsv"), 3);
+
+        assertThat(plan.shardOf("new.feature"), is(("new.feature".hashCode() & Integer.MAX_VALUE) % 3));
+    }
+
+    @Test
+    public void featuresWithoutDurationAreDividedByPath() {
+        ShardPlan plan = new ShardPlan(new HashMap<String, Long>(), 3);
+
+        assertThat(plan.shardOf("new.feature"), is(("new.feature".hashCode() & Integer.MAX_VALUE) % 3));
+    }
+}
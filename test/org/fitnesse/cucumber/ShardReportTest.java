@@ -0,0 +1,61 @@
+package org.fitnesse.cucumber;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fitnesse.testsystems.TestSummary;
+import util.FileUtil;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ShardReportTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("shards", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtil.deleteFileSystemDirectory(dir);
+    }
+
+    @Test
+    public void shardsAreMergedInFeatureOrder() throws IOException {
+        new ShardReport(dir, 2).add("features/b.feature", new TestSummary(3, 1, 0, 0), 200, "<h3>Feature: B</h3>");
+        new ShardReport(dir, 1).add("features/a.feature", new TestSummary(5, 0, 1, 0), 100, "<h3>Feature: A</h3>");
+        File report = new File(dir, "merged.html");
+
+        TestSummary total = ShardReport.merge(dir, report, null);
+
+        assertThat(total, is(new TestSummary(8, 1, 1, 0)));
+        String html = FileUtil.getFileContent(report);
+        assertThat(html, containsString("<h1>8 right, 1 wrong, 1 ignored, 0 exceptions</h1>"));
+        assertTrue(html.indexOf("<h3>Feature: A</h3>") < html.indexOf("<h3>Feature: B</h3>"));
+    }
+
+    @Test
+    public void durationsOfAllShardsAreMergedIntoTheDurationsFile() throws IOException {
+        File durations = new File(dir, "durations.tsv");
+        dir.mkdirs();
+        FileUtil.createFile(durations, "features/a.feature\t500\nfeatures/c.feature\t300\n");
+        new ShardReport(dir, 1).add("features/a.feature", new TestSummary(1, 0, 0, 0), 100, "");
+        new ShardReport(dir, 2).add("features/b.feature", new TestSummary(1, 0, 0, 0), 200, "");
+
+        ShardReport.merge(dir, new File(dir, "merged.html"), durations);
+
+        Map<String, Long> merged = ShardPlan.readDurations(durations);
+        assertThat(merged.get("features/a.feature"), is(100L));
+        assertThat(merged.get("features/b.feature"), is(200L));
+        assertThat(merged.get("features/c.feature"), is(300L));
+    }
+}